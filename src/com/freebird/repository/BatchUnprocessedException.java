@@ -0,0 +1,30 @@
+package com.freebird.repository;
+
+/**
+ * Thrown by the batch helpers of {@link DynamoCRUDRepository} when DynamoDB
+ * still reports unprocessed keys or items after all retries, so a batch is
+ * never returned or written partially without notice.
+ */
+public class BatchUnprocessedException extends RuntimeException {
+
+	private static final long serialVersionUID = -3170946452517350816L;
+
+	private final String tableName;
+
+	private final int unprocessedCount;
+
+	public BatchUnprocessedException(String tableName, int unprocessedCount, int attempts, Throwable cause) {
+		super(unprocessedCount + " keys or items of table " + tableName + " still unprocessed after " + attempts
+				+ " attempts.", cause);
+		this.tableName = tableName;
+		this.unprocessedCount = unprocessedCount;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public int getUnprocessedCount() {
+		return unprocessedCount;
+	}
+}
@@ -1,37 +1,104 @@
 package com.freebird.repository;
 
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import com.freebird.repository.ddbmapper.DDBMapper;
 import com.freebird.repository.ddbmapper.DDBModelException;
 import com.freebird.repository.ddbmapper.DDBTableMeta;
 import com.freebird.repository.ddbmapper.NOKeyException;
+import com.freebird.repository.ddbmapper.annotation.DDBTable;
+import com.freebird.repository.hotkey.HotKeyDetector;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
 import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
-import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.Select;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 public abstract class DynamoCRUDRepository<T> {
 
+	private static final Logger LOG = LoggerFactory.getLogger(DynamoCRUDRepository.class);
+
+	private static final int BATCH_MAX_ATTEMPTS = 8;
+
+	private static final long BATCH_BACKOFF_BASE_MILLIS = 25;
+
+	private static final long BATCH_BACKOFF_MAX_MILLIS = 1000;
+
 	@Autowired
 	private DynamoDbClient ddb;
 
+	private boolean lazyLoading;
+
+	private volatile HotKeyDetector hotKeyDetector;
+
+	private volatile Class<T> boundEntityClass;
+
+	// table name -> hash key name, for sampling the raw keys of batch requests
+	private volatile Map<String, String> batchHashKeyNames = Collections.emptyMap();
+
 	public DynamoDbClient getDynamoDbClient() {
 		return ddb;
 	}
 
+	public void setDynamoDbClient(DynamoDbClient ddb) {
+		this.ddb = ddb;
+	}
+
+	public boolean isLazyLoading() {
+		return lazyLoading;
+	}
+
+	/**
+	 * Populates List and Map fields of loaded entities lazily, converting each
+	 * element only when it is read. Useful for large items of which callers read
+	 * only a few attributes. Document-typed fields (nested DDBDocument objects)
+	 * stay eager; only the List and Map fields inside them are deferred.
+	 */
+	public void setLazyLoading(boolean lazyLoading) {
+		this.lazyLoading = lazyLoading;
+	}
+
+	public HotKeyDetector getHotKeyDetector() {
+		return hotKeyDetector;
+	}
+
+	/**
+	 * Samples the hash key of every request into the detector, per table and
+	 * operation. Null, the default, turns sampling off.
+	 *
+	 * Batch requests carry raw key maps, so their hash key name is taken from
+	 * the entity this repository is declared for (T resolved through the class
+	 * hierarchy). When T cannot be resolved, batch requests are not sampled and
+	 * a warning is logged.
+	 */
+	public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+		if (hotKeyDetector != null && batchHashKeyNames.isEmpty())
+			batchHashKeyNames = resolveBatchHashKeyNames();
+		this.hotKeyDetector = hotKeyDetector;
+	}
+
 	public T getItem(T t) throws IllegalArgumentException, IllegalAccessException, DDBModelException, NOKeyException,
 			InstantiationException, ClassNotFoundException, ParseException {
 		DDBTableMeta meta = DDBMapper.extractEntityMeta(t, DDBMapper.GET_MODE);
@@ -42,10 +109,11 @@ public abstract class DynamoCRUDRepository<T> {
 			attributeMap.put(meta.getRangeKeyName(), meta.getRangeKeyAttributeValue());
 
 		GetItemRequest request = GetItemRequest.builder().key(attributeMap).tableName(meta.getTableName()).build();
+		sampleHashKey(meta.getTableName(), "GetItem", meta.getHashKeyAttributeValue());
 		Map<String, AttributeValue> returnMap = ddb.getItem(request).item();
 		if (returnMap != null && !returnMap.keySet().isEmpty()) {
 			T newT = (T) t.getClass().newInstance();
-			DDBMapper.populateEntity(newT, returnMap);
+			DDBMapper.populateEntity(newT, returnMap, lazyLoading);
 			return newT;
 		}
 		return null;
@@ -53,25 +121,100 @@ public abstract class DynamoCRUDRepository<T> {
 
 	public List<T> queryByRangeKey(T t) throws IllegalArgumentException, IllegalAccessException, DDBModelException,
 			NOKeyException, InstantiationException, ClassNotFoundException, ParseException {
+		return rangeKeyQuery(t).execute().getItems();
+	}
 
-		DDBTableMeta meta = DDBMapper.extractEntityMeta(t, DDBMapper.GET_MODE);
+	/**
+	 * Same as queryByRangeKey, returning only the items that match the criteria;
+	 * the filter runs on the server and cannot refer to the table keys.
+	 */
+	public List<T> queryByRangeKey(T t, DynamoCriteria<T> criteria) throws IllegalArgumentException,
+			IllegalAccessException, DDBModelException, NOKeyException, InstantiationException, ClassNotFoundException,
+			ParseException {
+		return rangeKeyQuery(t).filter(criteria).execute().getItems();
+	}
 
-		HashMap<String, AttributeValue> attrValue = new HashMap<String, AttributeValue>();
-		attrValue.put(":pk", meta.getHashKeyAttributeValue());
-		attrValue.put(":typeRange", meta.getRangeKeyAttributeValue());
+	/**
+	 * Number of items queryByRangeKey would return, counted with Select.COUNT
+	 * without transferring or mapping the items.
+	 */
+	public long countByRangeKey(T t)
+			throws IllegalArgumentException, IllegalAccessException, DDBModelException, NOKeyException {
+		return rangeKeyQuery(t).count();
+	}
 
-		QueryRequest queryReq = QueryRequest.builder().tableName(meta.getTableName())
-				.keyConditionExpression("pk = :pk and begins_with(typeRange, :typeRange)")
-				.expressionAttributeValues(attrValue).build();
+	public long countByRangeKey(T t, DynamoCriteria<T> criteria)
+			throws IllegalArgumentException, IllegalAccessException, DDBModelException, NOKeyException {
+		return rangeKeyQuery(t).filter(criteria).count();
+	}
 
-		List<Map<String, AttributeValue>> returnMap = ddb.query(queryReq).items();
-		List<T> retNewListT = new ArrayList<T>();
-		for (Map<String, AttributeValue> map : returnMap) {
-			T newT = (T) t.getClass().newInstance();
-			DDBMapper.populateEntity(newT, map);
-			retNewListT.add(newT);
-		}
-		return retNewListT;
+	/**
+	 * Starts filter conditions on the attributes of the entity this repository
+	 * is declared for.
+	 *
+	 * @throws IllegalStateException when T is not bound to a class
+	 */
+	public DynamoCriteria<T> criteria() {
+		return new DynamoCriteria<T>(boundEntityClass());
+	}
+
+	/**
+	 * Starts filter conditions on the attributes of the entity.
+	 */
+	public DynamoCriteria<T> criteria(Class<T> entityClass) {
+		return new DynamoCriteria<T>(entityClass);
+	}
+
+	/**
+	 * Scans the whole table of the criteria's entity, returning the items that
+	 * match it. Reads every item, so prefer a query where keys are known.
+	 */
+	public List<T> scan(DynamoCriteria<T> criteria) throws DDBModelException, InstantiationException,
+			IllegalAccessException, IllegalArgumentException, ClassNotFoundException, ParseException {
+		List<T> entities = new ArrayList<T>();
+		Map<String, AttributeValue> lastEvaluatedKey = null;
+		do {
+			ScanResponse response = ddb.scan(scanRequest(criteria, lastEvaluatedKey).build());
+			for (Map<String, AttributeValue> item : response.items()) {
+				T entity = criteria.getEntityClass().newInstance();
+				DDBMapper.populateEntity(entity, item, lazyLoading);
+				entities.add(entity);
+			}
+			lastEvaluatedKey = response.lastEvaluatedKey();
+		} while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+		return entities;
+	}
+
+	/**
+	 * Counts the items of the table that match the criteria with a Select.COUNT
+	 * scan; no item is transferred or mapped.
+	 */
+	public long count(DynamoCriteria<T> criteria) throws DDBModelException {
+		long count = 0;
+		Map<String, AttributeValue> lastEvaluatedKey = null;
+		do {
+			ScanResponse response = ddb.scan(scanRequest(criteria, lastEvaluatedKey).select(Select.COUNT).build());
+			count += response.count();
+			lastEvaluatedKey = response.lastEvaluatedKey();
+		} while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+		return count;
+	}
+
+	/**
+	 * Starts a query on the table or one of the secondary indexes of the entity
+	 * this repository is declared for.
+	 *
+	 * @throws IllegalStateException when T is not bound to a class
+	 */
+	public DynamoQueryBuilder<T> query() {
+		return new DynamoQueryBuilder<T>(this, boundEntityClass());
+	}
+
+	/**
+	 * Starts a query on the table or one of the secondary indexes of the entity.
+	 */
+	public DynamoQueryBuilder<T> query(Class<? extends T> entityClass) {
+		return new DynamoQueryBuilder<T>(this, entityClass);
 	}
 
 	public T saveItem(T t) throws IllegalArgumentException, IllegalAccessException, DDBModelException, NOKeyException {
@@ -79,6 +222,7 @@ public abstract class DynamoCRUDRepository<T> {
 		HashMap<String, AttributeValue> attributeMap = meta.getAttributeMap();
 
 		PutItemRequest request = PutItemRequest.builder().tableName(meta.getTableName()).item(attributeMap).build();
+		sampleHashKey(meta.getTableName(), "PutItem", meta.getHashKeyAttributeValue());
 		ddb.putItem(request);
 		return t;
 	}
@@ -89,6 +233,7 @@ public abstract class DynamoCRUDRepository<T> {
 
 		UpdateItemRequest request = UpdateItemRequest.builder().tableName(meta.getTableName())
 				.key(meta.getAttributeMap()).attributeUpdates(meta.getUpdatedAttributeMap()).build();
+		sampleHashKey(meta.getTableName(), "UpdateItem", meta.getHashKeyAttributeValue());
 
 		ddb.updateItem(request);
 		return t;
@@ -100,63 +245,246 @@ public abstract class DynamoCRUDRepository<T> {
 
 		DeleteItemRequest deleteReq = DeleteItemRequest.builder().tableName(meta.getTableName())
 				.key(meta.getAttributeMap()).build();
+		sampleHashKey(meta.getTableName(), "DeleteItem", meta.getHashKeyAttributeValue());
 
 		ddb.deleteItem(deleteReq);
 		return 1;
 	}
 
+	/**
+	 * Gets the items of the keys, 100 keys per BatchGetItem. UnprocessedKeys are
+	 * retried with exponential backoff; the result is never silently short.
+	 *
+	 * @throws BatchUnprocessedException when keys are still unprocessed after
+	 *                                   the retries
+	 */
 	protected List<Map<String, AttributeValue>> batchGetPer100Item(String tableName,
 			List<Map<String, AttributeValue>> keyItem) {
 
 		List<Map<String, AttributeValue>> totalResponseMap = new ArrayList<Map<String, AttributeValue>>();
 		List<Map<String, AttributeValue>> box = new ArrayList<Map<String, AttributeValue>>();
-		int counter = 0;
-		for (Map<String, AttributeValue> one : keyItem) {			
+		for (Map<String, AttributeValue> one : keyItem) {
 			box.add(one);
-			counter++;
-			if (counter == 100) {
-				Map<String, KeysAndAttributes> requestItems = new HashMap<>();
-				requestItems.put(tableName, KeysAndAttributes.builder().keys(keyItem).build());
-				BatchGetItemRequest request = BatchGetItemRequest.builder().requestItems(requestItems).build();
-				List<Map<String, AttributeValue>> responseMap = ddb.batchGetItem(request).responses().get(tableName);
-				totalResponseMap.addAll(responseMap);
-				box.clear();
-				counter = 0;
+			if (box.size() == 100) {
+				totalResponseMap.addAll(batchGet(tableName, box));
+				box = new ArrayList<Map<String, AttributeValue>>();
 			}
 		}
-		
-		if(!box.isEmpty()) {
-			Map<String, KeysAndAttributes> requestItems = new HashMap<>();
-			requestItems.put(tableName, KeysAndAttributes.builder().keys(keyItem).build());
-			BatchGetItemRequest request = BatchGetItemRequest.builder().requestItems(requestItems).build();
-			List<Map<String, AttributeValue>> responseMap = ddb.batchGetItem(request).responses().get(tableName);
-			totalResponseMap.addAll(responseMap);
-		}
+		if (!box.isEmpty())
+			totalResponseMap.addAll(batchGet(tableName, box));
 
 		return totalResponseMap;
 	}
-	
-	protected void batchWritePer25Item(String tableName,
-			List<WriteRequest> keyItem) {
-		int counter = 0;
+
+	/**
+	 * Writes the requests, 25 per BatchWriteItem. UnprocessedItems are retried
+	 * with exponential backoff.
+	 *
+	 * @throws BatchUnprocessedException when requests are still unprocessed
+	 *                                   after the retries
+	 */
+	protected void batchWritePer25Item(String tableName, List<WriteRequest> keyItem) {
 		List<WriteRequest> box = new ArrayList<WriteRequest>();
 		for (WriteRequest one : keyItem) {
 			box.add(one);
-			counter++;
-			if (counter == 25) {
-				HashMap<String, List<WriteRequest>> map = new HashMap<String, List<WriteRequest>>();
-			    map.put(tableName, box);			    
-			    BatchWriteItemRequest batchWriteItemRequest = BatchWriteItemRequest.builder().requestItems(map).build();
-			    ddb.batchWriteItem(batchWriteItemRequest);				
-				box.clear();
-				counter = 0;
+			if (box.size() == 25) {
+				batchWrite(tableName, box);
+				box = new ArrayList<WriteRequest>();
 			}
 		}
-		if(!box.isEmpty()) {
+		if (!box.isEmpty())
+			batchWrite(tableName, box);
+	}
+
+	private List<Map<String, AttributeValue>> batchGet(String tableName, List<Map<String, AttributeValue>> keys) {
+		List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		List<Map<String, AttributeValue>> pending = keys;
+		for (int attempt = 1;; attempt++) {
+			Map<String, KeysAndAttributes> requestItems = new HashMap<>();
+			requestItems.put(tableName, KeysAndAttributes.builder().keys(pending).build());
+			BatchGetItemRequest request = BatchGetItemRequest.builder().requestItems(requestItems).build();
+			sampleHashKeys(tableName, "BatchGetItem", pending);
+			try {
+				BatchGetItemResponse response = ddb.batchGetItem(request);
+				List<Map<String, AttributeValue>> responseMap = response.responses().get(tableName);
+				if (responseMap != null)
+					items.addAll(responseMap);
+				KeysAndAttributes unprocessed = response.unprocessedKeys().get(tableName);
+				pending = unprocessed == null ? new ArrayList<Map<String, AttributeValue>>() : unprocessed.keys();
+			} catch (ProvisionedThroughputExceededException e) {
+				// nothing of the batch was processed
+				if (attempt == BATCH_MAX_ATTEMPTS)
+					throw new BatchUnprocessedException(tableName, pending.size(), attempt, e);
+			}
+			if (pending.isEmpty())
+				return items;
+			if (attempt == BATCH_MAX_ATTEMPTS)
+				throw new BatchUnprocessedException(tableName, pending.size(), attempt, null);
+			backoff(tableName, pending.size(), attempt);
+		}
+	}
+
+	private void batchWrite(String tableName, List<WriteRequest> requests) {
+		List<WriteRequest> pending = requests;
+		for (int attempt = 1;; attempt++) {
 			HashMap<String, List<WriteRequest>> map = new HashMap<String, List<WriteRequest>>();
-		    map.put(tableName, box);			    
-		    BatchWriteItemRequest batchWriteItemRequest = BatchWriteItemRequest.builder().requestItems(map).build();
-		    ddb.batchWriteItem(batchWriteItemRequest);	
+			map.put(tableName, pending);
+			BatchWriteItemRequest batchWriteItemRequest = BatchWriteItemRequest.builder().requestItems(map).build();
+			sampleWriteRequests(tableName, pending);
+			try {
+				List<WriteRequest> unprocessed = ddb.batchWriteItem(batchWriteItemRequest).unprocessedItems()
+						.get(tableName);
+				pending = unprocessed == null ? new ArrayList<WriteRequest>() : unprocessed;
+			} catch (ProvisionedThroughputExceededException e) {
+				if (attempt == BATCH_MAX_ATTEMPTS)
+					throw new BatchUnprocessedException(tableName, pending.size(), attempt, e);
+			}
+			if (pending.isEmpty())
+				return;
+			if (attempt == BATCH_MAX_ATTEMPTS)
+				throw new BatchUnprocessedException(tableName, pending.size(), attempt, null);
+			backoff(tableName, pending.size(), attempt);
+		}
+	}
+
+	// full jitter: a random wait up to base * 2^(attempt - 1), capped
+	private static void backoff(String tableName, int unprocessed, int attempt) {
+		long ceiling = Math.min(BATCH_BACKOFF_MAX_MILLIS, BATCH_BACKOFF_BASE_MILLIS << (attempt - 1));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BatchUnprocessedException(tableName, unprocessed, attempt, e);
+		}
+	}
+
+	private DynamoQueryBuilder<T> rangeKeyQuery(T t)
+			throws IllegalArgumentException, IllegalAccessException, DDBModelException, NOKeyException {
+		DDBTableMeta meta = DDBMapper.extractEntityMeta(t, DDBMapper.GET_MODE);
+
+		Class<T> entityClass = typed(t.getClass());
+		DynamoQueryBuilder<T> query = query(entityClass).hashKey(meta.getHashKeyName(),
+				meta.getHashKeyAttributeValue());
+		if (meta.getRangeKeyName() != null)
+			query.rangeKey(meta.getRangeKeyName(), DynamoQueryBuilder.OP.BEGINS_WITH, meta.getRangeKeyAttributeValue());
+		return query;
+	}
+
+	private ScanRequest.Builder scanRequest(DynamoCriteria<T> criteria, Map<String, AttributeValue> exclusiveStartKey)
+			throws DDBModelException {
+		DDBTable table = criteria.getEntityClass().getAnnotation(DDBTable.class);
+		if (table == null)
+			throw new DDBModelException("Entity no annotation present, like DDBTable.");
+
+		Map<String, String> names = new HashMap<String, String>();
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		ScanRequest.Builder request = ScanRequest.builder().tableName(table.name())
+				.filterExpression(criteria.toFilterExpression(names, values));
+		// DynamoDB rejects empty expression maps
+		if (!names.isEmpty())
+			request.expressionAttributeNames(names);
+		if (!values.isEmpty())
+			request.expressionAttributeValues(values);
+		if (exclusiveStartKey != null && !exclusiveStartKey.isEmpty())
+			request.exclusiveStartKey(exclusiveStartKey);
+		return request;
+	}
+
+	void sampleHashKey(String tableName, String operation, AttributeValue hashKey) {
+		HotKeyDetector detector = hotKeyDetector;
+		if (detector != null)
+			detector.record(tableName, operation, hashKey);
+	}
+
+	private void sampleHashKeys(String tableName, String operation, List<Map<String, AttributeValue>> keys) {
+		HotKeyDetector detector = hotKeyDetector;
+		String hashKeyName = detector == null ? null : batchHashKeyNames.get(tableName);
+		if (hashKeyName == null)
+			return;
+		for (Map<String, AttributeValue> key : keys)
+			detector.record(tableName, operation, key.get(hashKeyName));
+	}
+
+	private void sampleWriteRequests(String tableName, List<WriteRequest> requests) {
+		HotKeyDetector detector = hotKeyDetector;
+		String hashKeyName = detector == null ? null : batchHashKeyNames.get(tableName);
+		if (hashKeyName == null)
+			return;
+		for (WriteRequest request : requests) {
+			Map<String, AttributeValue> key = request.putRequest() != null ? request.putRequest().item()
+					: request.deleteRequest() != null ? request.deleteRequest().key() : null;
+			if (key != null)
+				detector.record(tableName, "BatchWriteItem", key.get(hashKeyName));
+		}
+	}
+
+	private Map<String, String> resolveBatchHashKeyNames() {
+		Class<?> entityClass = entityClass(getClass());
+		if (entityClass == null || !entityClass.isAnnotationPresent(DDBTable.class)) {
+			LOG.warn("Cannot resolve the DDBTable entity of {}, batch requests are not sampled for hot keys.",
+					getClass().getName());
+			return Collections.emptyMap();
+		}
+		try {
+			return Collections.singletonMap(entityClass.getAnnotation(DDBTable.class).name(),
+					DDBMapper.extractKeySchemas(entityClass).get(0).getHashKeyName());
+		} catch (DDBModelException e) {
+			LOG.warn("Cannot read the key schema of {}, batch requests are not sampled for hot keys.",
+					entityClass.getName(), e);
+			return Collections.emptyMap();
+		}
+	}
+
+	private Class<T> boundEntityClass() {
+		Class<T> resolved = boundEntityClass;
+		if (resolved == null) {
+			resolved = typed(entityClass(getClass()));
+			if (resolved == null)
+				throw new IllegalStateException("Cannot resolve the entity class of " + getClass().getName()
+						+ ", pass it to criteria(Class) or query(Class).");
+			boundEntityClass = resolved;
+		}
+		return resolved;
+	}
+
+	// T is erased, so both the class T is bound to and the class of a T are
+	// typed Class<?>; each is a Class<T> or a subclass of it
+	@SuppressWarnings("unchecked")
+	private static <E> Class<E> typed(Class<?> entityClass) {
+		return (Class<E>) entityClass;
+	}
+
+	/**
+	 * The class bound to T, following type arguments through intermediate
+	 * (generic) subclasses and proxies.
+	 *
+	 * @return null if T is not bound to a class
+	 */
+	static Class<?> entityClass(Class<?> repositoryClass) {
+		Map<TypeVariable<?>, Type> bindings = new HashMap<TypeVariable<?>, Type>();
+		Class<?> current = repositoryClass;
+		while (current != null && current != DynamoCRUDRepository.class) {
+			Type superType = current.getGenericSuperclass();
+			Map<TypeVariable<?>, Type> superBindings = new HashMap<TypeVariable<?>, Type>();
+			if (superType instanceof ParameterizedType) {
+				Class<?> raw = (Class<?>) ((ParameterizedType) superType).getRawType();
+				Type[] arguments = ((ParameterizedType) superType).getActualTypeArguments();
+				TypeVariable<?>[] parameters = raw.getTypeParameters();
+				for (int i = 0; i < parameters.length; i++) {
+					Type argument = arguments[i];
+					superBindings.put(parameters[i], bindings.containsKey(argument) ? bindings.get(argument) : argument);
+				}
+				current = raw;
+			} else {
+				current = (Class<?>) superType;
+			}
+			bindings = superBindings;
 		}
+		if (current == null)
+			return null;
+		Type entityType = bindings.get(DynamoCRUDRepository.class.getTypeParameters()[0]);
+		if (entityType instanceof ParameterizedType)
+			entityType = ((ParameterizedType) entityType).getRawType();
+		return entityType instanceof Class ? (Class<?>) entityType : null;
 	}
 }
@@ -0,0 +1,265 @@
+package com.freebird.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.freebird.repository.ddbmapper.DDBMapper;
+import com.freebird.repository.ddbmapper.DDBModelException;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Filter conditions on an entity, pushed down to DynamoDB as a
+ * FilterExpression. Attributes are given by Java field name or by their
+ * DDBAttr/DDBHashKey/DDBRangeKey name, optionally followed by a map path such
+ * as "meta.color"; values are converted like entity fields. Conditions are
+ * combined with AND; use {@link #anyOf} for OR.
+ *
+ * Filters run after items are read, so they cut network and mapping work but
+ * not read capacity.
+ */
+public class DynamoCriteria<T> {
+
+	private static final int IN_LIMIT = 100;
+
+	private final Class<T> entityClass;
+
+	private final List<Condition> conditions = new ArrayList<Condition>();
+
+	public DynamoCriteria(Class<T> entityClass) {
+		this.entityClass = entityClass;
+	}
+
+	public Class<T> getEntityClass() {
+		return entityClass;
+	}
+
+	public boolean isEmpty() {
+		return conditions.isEmpty();
+	}
+
+	public DynamoCriteria<T> eq(String name, Object value) {
+		return compare(name, "=", value);
+	}
+
+	public DynamoCriteria<T> ne(String name, Object value) {
+		return compare(name, "<>", value);
+	}
+
+	public DynamoCriteria<T> lt(String name, Object value) {
+		return compare(name, "<", value);
+	}
+
+	public DynamoCriteria<T> le(String name, Object value) {
+		return compare(name, "<=", value);
+	}
+
+	public DynamoCriteria<T> gt(String name, Object value) {
+		return compare(name, ">", value);
+	}
+
+	public DynamoCriteria<T> ge(String name, Object value) {
+		return compare(name, ">=", value);
+	}
+
+	public DynamoCriteria<T> between(String name, Object low, Object high) {
+		conditions.add(new Condition("between", name, requireValue(name, low), requireValue(name, high)));
+		return this;
+	}
+
+	public DynamoCriteria<T> beginsWith(String name, String prefix) {
+		conditions.add(new Condition("begins_with", name, requireValue(name, prefix)));
+		return this;
+	}
+
+	/**
+	 * Substring of a String attribute, or element of a List or Set attribute.
+	 */
+	public DynamoCriteria<T> contains(String name, Object value) {
+		conditions.add(new Condition("contains", name, requireValue(name, value)));
+		return this;
+	}
+
+	public DynamoCriteria<T> attributeExists(String name) {
+		conditions.add(new Condition("attribute_exists", name));
+		return this;
+	}
+
+	public DynamoCriteria<T> attributeNotExists(String name) {
+		conditions.add(new Condition("attribute_not_exists", name));
+		return this;
+	}
+
+	public DynamoCriteria<T> in(String name, Object... values) {
+		return in(name, Arrays.asList(values));
+	}
+
+	public DynamoCriteria<T> in(String name, Collection<?> values) {
+		if (values.isEmpty() || values.size() > IN_LIMIT)
+			throw new IllegalArgumentException("IN takes 1 to " + IN_LIMIT + " values, got " + values.size() + ".");
+		List<Object> operands = new ArrayList<Object>();
+		for (Object value : values)
+			operands.add(requireValue(name, value));
+		conditions.add(new Condition("IN", name, operands.toArray()));
+		return this;
+	}
+
+	/**
+	 * Matches when at least one of the alternatives matches.
+	 */
+	@SafeVarargs
+	public final DynamoCriteria<T> anyOf(DynamoCriteria<T>... alternatives) {
+		List<DynamoCriteria<T>> list = new ArrayList<DynamoCriteria<T>>(alternatives.length);
+		for (DynamoCriteria<T> alternative : alternatives)
+			list.add(alternative);
+		return anyOf(list);
+	}
+
+	public DynamoCriteria<T> anyOf(List<DynamoCriteria<T>> alternatives) {
+		if (alternatives.isEmpty())
+			throw new IllegalArgumentException("anyOf needs at least one alternative.");
+		conditions.add(new Condition(new ArrayList<DynamoCriteria<T>>(alternatives)));
+		return this;
+	}
+
+	/**
+	 * Renders the FilterExpression, adding its placeholders to names and values.
+	 * Placeholders are #f0, :f0, ... so they do not clash with key conditions.
+	 *
+	 * @return the expression, or null without conditions
+	 * @throws DDBModelException
+	 */
+	String toFilterExpression(Map<String, String> names, Map<String, AttributeValue> values)
+			throws DDBModelException {
+		if (conditions.isEmpty())
+			return null;
+		StringBuilder expression = new StringBuilder();
+		for (Condition condition : conditions) {
+			if (expression.length() > 0)
+				expression.append(" AND ");
+			condition.render(expression, names, values);
+		}
+		return expression.toString();
+	}
+
+	/**
+	 * Top-level attribute names the conditions refer to, including those of
+	 * anyOf alternatives.
+	 *
+	 * @return
+	 * @throws DDBModelException
+	 */
+	Set<String> getAttributeNames() throws DDBModelException {
+		Set<String> attributeNames = new LinkedHashSet<String>();
+		for (Condition condition : conditions) {
+			if (condition.alternatives == null) {
+				attributeNames.add(DDBMapper.getAttributeName(entityClass, condition.name.split("\\.")[0]));
+			} else {
+				for (DynamoCriteria<T> alternative : condition.alternatives)
+					attributeNames.addAll(alternative.getAttributeNames());
+			}
+		}
+		return attributeNames;
+	}
+
+	private DynamoCriteria<T> compare(String name, String comparator, Object value) {
+		conditions.add(new Condition(comparator, name, requireValue(name, value)));
+		return this;
+	}
+
+	private static Object requireValue(String name, Object value) {
+		if (value == null)
+			throw new IllegalArgumentException(name + "'s value is required, use attributeNotExists for missing attributes.");
+		return value;
+	}
+
+	private class Condition {
+
+		final String operator;
+
+		final String name;
+
+		final Object[] operands;
+
+		final List<DynamoCriteria<T>> alternatives;
+
+		Condition(String operator, String name, Object... operands) {
+			this.operator = operator;
+			this.name = name;
+			this.operands = operands;
+			this.alternatives = null;
+		}
+
+		Condition(List<DynamoCriteria<T>> alternatives) {
+			this.operator = "OR";
+			this.name = null;
+			this.operands = null;
+			this.alternatives = alternatives;
+		}
+
+		void render(StringBuilder expression, Map<String, String> names, Map<String, AttributeValue> values)
+				throws DDBModelException {
+			if (alternatives != null) {
+				expression.append('(');
+				for (int i = 0; i < alternatives.size(); i++) {
+					String alternative = alternatives.get(i).toFilterExpression(names, values);
+					if (alternative == null)
+						throw new DDBModelException("anyOf alternative " + i + " has no conditions.");
+					expression.append(i == 0 ? "(" : " OR (").append(alternative).append(')');
+				}
+				expression.append(')');
+				return;
+			}
+
+			String path = path(names);
+			List<String> placeholders = new ArrayList<String>();
+			for (Object operand : operands) {
+				String placeholder = ":f" + values.size();
+				values.put(placeholder, DDBMapper.toAttributeValue(operand));
+				placeholders.add(placeholder);
+			}
+
+			switch (operator) {
+				case "between":
+					expression.append(path).append(" BETWEEN ").append(placeholders.get(0)).append(" AND ")
+							.append(placeholders.get(1));
+					break;
+				case "IN":
+					expression.append(path).append(" IN (").append(String.join(", ", placeholders)).append(')');
+					break;
+				case "begins_with":
+				case "contains":
+					expression.append(operator).append('(').append(path).append(", ").append(placeholders.get(0))
+							.append(')');
+					break;
+				case "attribute_exists":
+				case "attribute_not_exists":
+					expression.append(operator).append('(').append(path).append(')');
+					break;
+				default:
+					expression.append(path).append(' ').append(operator).append(' ').append(placeholders.get(0));
+					break;
+			}
+		}
+
+		// the first segment is an entity attribute, the rest are map keys
+		private String path(Map<String, String> names) throws DDBModelException {
+			String[] segments = name.split("\\.");
+			segments[0] = DDBMapper.getAttributeName(entityClass, segments[0]);
+			StringBuilder path = new StringBuilder();
+			for (String segment : segments) {
+				String placeholder = "#f" + names.size();
+				names.put(placeholder, segment);
+				if (path.length() > 0)
+					path.append('.');
+				path.append(placeholder);
+			}
+			return path.toString();
+		}
+	}
+}
@@ -0,0 +1,339 @@
+package com.freebird.repository;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.freebird.repository.ddbmapper.DDBIndexMeta;
+import com.freebird.repository.ddbmapper.DDBMapper;
+import com.freebird.repository.ddbmapper.DDBModelException;
+import com.freebird.repository.ddbmapper.NOKeyException;
+import com.freebird.repository.ddbmapper.annotation.DDBTable;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+
+/**
+ * Query on the base table or a secondary index of an entity. Key attribute names
+ * come from DDBHashKey/DDBRangeKey and DDBIndexHashKey/DDBIndexRangeKey; keys
+ * may be given by attribute or Java field name. Without {@link #index(String)}
+ * the first schema whose keys match is used, in the order base table, local
+ * indexes, global indexes. A {@link DynamoCriteria} filter is sent as the
+ * FilterExpression.
+ */
+public class DynamoQueryBuilder<T> {
+
+	public enum OP {EQ, LT, LE, GT, GE, BETWEEN, BEGINS_WITH};
+
+	private final DynamoCRUDRepository<T> repository;
+
+	private final Class<? extends T> entityClass;
+
+	private String hashKey;
+
+	private Object hashKeyValue;
+
+	private String rangeKey;
+
+	private OP rangeKeyOp;
+
+	private Object rangeKeyValue;
+
+	private Object rangeKeyHighValue;
+
+	private String indexName;
+
+	private Boolean fetchFullItems;
+
+	private boolean scanIndexForward = true;
+
+	private Integer limit;
+
+	private Map<String, AttributeValue> exclusiveStartKey;
+
+	private DynamoCriteria<T> filter;
+
+	DynamoQueryBuilder(DynamoCRUDRepository<T> repository, Class<? extends T> entityClass) {
+		this.repository = repository;
+		this.entityClass = entityClass;
+	}
+
+	public DynamoQueryBuilder<T> hashKey(String name, Object value) {
+		this.hashKey = name;
+		this.hashKeyValue = value;
+		return this;
+	}
+
+	public DynamoQueryBuilder<T> rangeKey(String name, OP op, Object value) {
+		if (op == OP.BETWEEN)
+			throw new IllegalArgumentException("Use rangeKeyBetween for BETWEEN.");
+		this.rangeKey = name;
+		this.rangeKeyOp = op;
+		this.rangeKeyValue = value;
+		return this;
+	}
+
+	public DynamoQueryBuilder<T> rangeKeyBetween(String name, Object low, Object high) {
+		this.rangeKey = name;
+		this.rangeKeyOp = OP.BETWEEN;
+		this.rangeKeyValue = low;
+		this.rangeKeyHighValue = high;
+		return this;
+	}
+
+	/**
+	 * Forces the secondary index to query.
+	 */
+	public DynamoQueryBuilder<T> index(String indexName) {
+		this.indexName = indexName;
+		return this;
+	}
+
+	/**
+	 * Overrides whether full items are batch-fetched from the table after
+	 * querying an index. Defaults to true for KEYS_ONLY indexes and for INCLUDE
+	 * indexes that do not project every attribute of the entity.
+	 */
+	public DynamoQueryBuilder<T> fetchFullItems(boolean fetchFullItems) {
+		this.fetchFullItems = fetchFullItems;
+		return this;
+	}
+
+	public DynamoQueryBuilder<T> scanIndexForward(boolean scanIndexForward) {
+		this.scanIndexForward = scanIndexForward;
+		return this;
+	}
+
+	/**
+	 * Maximum number of items to return; pages are followed until it is reached.
+	 */
+	public DynamoQueryBuilder<T> limit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	public DynamoQueryBuilder<T> exclusiveStartKey(Map<String, AttributeValue> exclusiveStartKey) {
+		this.exclusiveStartKey = exclusiveStartKey;
+		return this;
+	}
+
+	/**
+	 * Filters non-key attributes on the server side. The keys of the queried
+	 * table or index belong in hashKey/rangeKey, and on a KEYS_ONLY or INCLUDE
+	 * index only the table keys and the projected nonKeyAttributes can be
+	 * filtered; the query fails with DDBModelException for any other attribute.
+	 */
+	public DynamoQueryBuilder<T> filter(DynamoCriteria<T> filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	/**
+	 * Table or index key schema the query will run on.
+	 *
+	 * @return
+	 * @throws DDBModelException
+	 */
+	public DDBIndexMeta resolveIndex() throws DDBModelException {
+		for (DDBIndexMeta schema : DDBMapper.extractKeySchemas(entityClass)) {
+			if (indexName != null && !indexName.equals(schema.getIndexName()))
+				continue;
+			if (schema.isHashKey(hashKey) && (rangeKey == null || schema.isRangeKey(rangeKey)))
+				return schema;
+		}
+		throw new DDBModelException("No " + (indexName == null ? "table or index" : "index " + indexName) + " of "
+				+ entityClass.getSimpleName() + " has hash key " + hashKey
+				+ (rangeKey == null ? "" : " and range key " + rangeKey) + ".");
+	}
+
+	/**
+	 * Runs the query, following pages up to the limit.
+	 *
+	 * @return
+	 * @throws BatchUnprocessedException when full items of an index query stay
+	 *                                   unprocessed after retries
+	 */
+	public DynamoQueryResult<T> execute() throws DDBModelException, NOKeyException, InstantiationException,
+			IllegalAccessException, IllegalArgumentException, ClassNotFoundException, ParseException {
+		checkKeyValues();
+		DDBIndexMeta index = resolveIndex();
+		String tableName = entityClass.getAnnotation(DDBTable.class).name();
+		String sampledTable = sampledTableName(tableName, index);
+		AttributeValue hashKeyAttributeValue = DDBMapper.toAttributeValue(hashKeyValue);
+
+		List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> lastEvaluatedKey = exclusiveStartKey;
+		do {
+			repository.sampleHashKey(sampledTable, "Query", hashKeyAttributeValue);
+			QueryRequest.Builder request = buildRequest(tableName, index);
+			if (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty())
+				request.exclusiveStartKey(lastEvaluatedKey);
+			if (limit != null)
+				request.limit(limit - items.size());
+
+			QueryResponse response = repository.getDynamoDbClient().query(request.build());
+			items.addAll(response.items());
+			lastEvaluatedKey = response.lastEvaluatedKey();
+		} while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty() && (limit == null || items.size() < limit));
+
+		boolean fetch = !index.isBaseTable()
+				&& (fetchFullItems != null ? fetchFullItems : !index.isAllAttributesProjected());
+		if (fetch)
+			items = fetchFullItems(tableName, items);
+
+		List<T> entities = new ArrayList<T>();
+		for (Map<String, AttributeValue> item : items) {
+			T entity = entityClass.newInstance();
+			DDBMapper.populateEntity(entity, item, repository.isLazyLoading());
+			entities.add(entity);
+		}
+		return new DynamoQueryResult<T>(entities, index.getIndexName(), fetch,
+				lastEvaluatedKey == null || lastEvaluatedKey.isEmpty() ? null : lastEvaluatedKey);
+	}
+
+	/**
+	 * Counts the matching items with Select.COUNT, from exclusiveStartKey on,
+	 * without returning or mapping any item. limit is not applied.
+	 *
+	 * @return
+	 * @throws DDBModelException
+	 * @throws NOKeyException
+	 */
+	public long count() throws DDBModelException, NOKeyException {
+		checkKeyValues();
+		DDBIndexMeta index = resolveIndex();
+		String tableName = entityClass.getAnnotation(DDBTable.class).name();
+		String sampledTable = sampledTableName(tableName, index);
+		AttributeValue hashKeyAttributeValue = DDBMapper.toAttributeValue(hashKeyValue);
+
+		long count = 0;
+		Map<String, AttributeValue> lastEvaluatedKey = exclusiveStartKey;
+		do {
+			repository.sampleHashKey(sampledTable, "Query", hashKeyAttributeValue);
+			QueryRequest.Builder request = buildRequest(tableName, index).select(Select.COUNT);
+			if (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty())
+				request.exclusiveStartKey(lastEvaluatedKey);
+
+			QueryResponse response = repository.getDynamoDbClient().query(request.build());
+			count += response.count();
+			lastEvaluatedKey = response.lastEvaluatedKey();
+		} while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+		return count;
+	}
+
+	QueryRequest.Builder buildRequest(String tableName, DDBIndexMeta index) throws DDBModelException {
+		Map<String, String> names = new HashMap<String, String>();
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+
+		names.put("#hk", index.getHashKeyName());
+		values.put(":hk", DDBMapper.toAttributeValue(hashKeyValue));
+		StringBuilder keyCondition = new StringBuilder("#hk = :hk");
+
+		if (rangeKeyOp != null) {
+			names.put("#rk", index.getRangeKeyName());
+			values.put(":rk", DDBMapper.toAttributeValue(rangeKeyValue));
+			keyCondition.append(" and ");
+			switch (rangeKeyOp) {
+				case EQ:
+					keyCondition.append("#rk = :rk");
+					break;
+				case LT:
+					keyCondition.append("#rk < :rk");
+					break;
+				case LE:
+					keyCondition.append("#rk <= :rk");
+					break;
+				case GT:
+					keyCondition.append("#rk > :rk");
+					break;
+				case GE:
+					keyCondition.append("#rk >= :rk");
+					break;
+				case BETWEEN:
+					values.put(":rk2", DDBMapper.toAttributeValue(rangeKeyHighValue));
+					keyCondition.append("#rk between :rk and :rk2");
+					break;
+				case BEGINS_WITH:
+					keyCondition.append("begins_with(#rk, :rk)");
+					break;
+			}
+		}
+
+		String filterExpression = null;
+		if (filter != null) {
+			checkFilter(index);
+			filterExpression = filter.toFilterExpression(names, values);
+		}
+
+		QueryRequest.Builder request = QueryRequest.builder().tableName(tableName)
+				.keyConditionExpression(keyCondition.toString()).filterExpression(filterExpression)
+				.expressionAttributeNames(names).expressionAttributeValues(values).scanIndexForward(scanIndexForward);
+		if (!index.isBaseTable())
+			request.indexName(index.getIndexName());
+		return request;
+	}
+
+	// DynamoDB rejects key attributes in a query filter, and an attribute missing
+	// from the index items would make the filter silently match nothing
+	private void checkFilter(DDBIndexMeta index) throws DDBModelException {
+		DDBIndexMeta table = DDBMapper.extractKeySchemas(entityClass).get(0);
+		for (String name : filter.getAttributeNames()) {
+			if (index.isHashKey(name) || index.isRangeKey(name))
+				throw new DDBModelException(name + " is a key of "
+						+ (index.isBaseTable() ? "the table" : "index " + index.getIndexName())
+						+ " and cannot be filtered, use hashKey or rangeKey.");
+			if (!index.isProjected(name) && !table.isHashKey(name) && !table.isRangeKey(name))
+				throw new DDBModelException(name + " is not projected into " + index.getProjection() + " index "
+						+ index.getIndexName() + " and cannot be filtered.");
+		}
+	}
+
+	private void checkKeyValues() throws NOKeyException {
+		if (hashKeyValue == null)
+			throw new NOKeyException(hashKey + "'s value is required.");
+		if (rangeKeyOp != null && (rangeKeyValue == null || (rangeKeyOp == OP.BETWEEN && rangeKeyHighValue == null)))
+			throw new NOKeyException(rangeKey + "'s value is required.");
+	}
+
+	// an index has its own partitions, so its hot keys are sampled separately
+	private static String sampledTableName(String tableName, DDBIndexMeta index) {
+		return index.isBaseTable() ? tableName : tableName + "/index/" + index.getIndexName();
+	}
+
+	private List<Map<String, AttributeValue>> fetchFullItems(String tableName, List<Map<String, AttributeValue>> indexItems)
+			throws DDBModelException {
+		DDBIndexMeta table = DDBMapper.extractKeySchemas(entityClass).get(0);
+
+		List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>();
+		for (Map<String, AttributeValue> item : indexItems)
+			keys.add(tableKey(table, item));
+
+		Map<Map<String, AttributeValue>, Map<String, AttributeValue>> byKey = new HashMap<Map<String, AttributeValue>, Map<String, AttributeValue>>();
+		if (!keys.isEmpty()) {
+			for (Map<String, AttributeValue> item : repository.batchGetPer100Item(tableName, keys))
+				byKey.put(tableKey(table, item), item);
+		}
+
+		// keep the index order; unprocessed keys are retried (or fail) in
+		// batchGetPer100Item, so a key without an item was deleted after the index read
+		List<Map<String, AttributeValue>> fullItems = new ArrayList<Map<String, AttributeValue>>();
+		for (Map<String, AttributeValue> key : keys) {
+			Map<String, AttributeValue> item = byKey.get(key);
+			if (item != null)
+				fullItems.add(item);
+		}
+		return fullItems;
+	}
+
+	private static Map<String, AttributeValue> tableKey(DDBIndexMeta table, Map<String, AttributeValue> item) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put(table.getHashKeyName(), item.get(table.getHashKeyName()));
+		if (table.getRangeKeyName() != null)
+			key.put(table.getRangeKeyName(), item.get(table.getRangeKeyName()));
+		return key;
+	}
+}
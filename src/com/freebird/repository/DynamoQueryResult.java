@@ -0,0 +1,56 @@
+package com.freebird.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Items of a {@link DynamoQueryBuilder} query and the table or index that served
+ * them.
+ */
+public class DynamoQueryResult<T> {
+
+	private final List<T> items;
+
+	private final String indexName;
+
+	private final boolean fetchedFullItems;
+
+	private final Map<String, AttributeValue> lastEvaluatedKey;
+
+	public DynamoQueryResult(List<T> items, String indexName, boolean fetchedFullItems,
+			Map<String, AttributeValue> lastEvaluatedKey) {
+		this.items = items;
+		this.indexName = indexName;
+		this.fetchedFullItems = fetchedFullItems;
+		this.lastEvaluatedKey = lastEvaluatedKey;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * Secondary index that was queried, null for the base table.
+	 */
+	public String getIndexName() {
+		return indexName;
+	}
+
+	/**
+	 * Whether the items were batch-fetched from the table after querying a
+	 * KEYS_ONLY or INCLUDE index.
+	 */
+	public boolean isFetchedFullItems() {
+		return fetchedFullItems;
+	}
+
+	/**
+	 * Key to continue from with {@link DynamoQueryBuilder#exclusiveStartKey(Map)},
+	 * null when the query is exhausted.
+	 */
+	public Map<String, AttributeValue> getLastEvaluatedKey() {
+		return lastEvaluatedKey;
+	}
+}
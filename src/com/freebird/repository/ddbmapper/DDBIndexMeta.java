@@ -0,0 +1,135 @@
+package com.freebird.repository.ddbmapper;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.freebird.repository.ddbmapper.annotation.DDBIndexRangeKey.PROJECTION;
+
+/**
+ * Key schema of a table or one of its secondary indexes. indexName is null for
+ * the base table.
+ */
+public class DDBIndexMeta {
+
+	private String indexName;
+
+	private boolean global;
+
+	private String hashKeyName;
+
+	private String hashKeyFieldName;
+
+	private String rangeKeyName;
+
+	private String rangeKeyFieldName;
+
+	private PROJECTION projection = PROJECTION.ALL;
+
+	private Set<String> nonKeyAttributes = new LinkedHashSet<String>();
+
+	private boolean allAttributesProjected = true;
+
+	public String getIndexName() {
+		return indexName;
+	}
+
+	public void setIndexName(String indexName) {
+		this.indexName = indexName;
+	}
+
+	public boolean isGlobal() {
+		return global;
+	}
+
+	public void setGlobal(boolean global) {
+		this.global = global;
+	}
+
+	public String getHashKeyName() {
+		return hashKeyName;
+	}
+
+	public void setHashKeyName(String hashKeyName) {
+		this.hashKeyName = hashKeyName;
+	}
+
+	public String getHashKeyFieldName() {
+		return hashKeyFieldName;
+	}
+
+	public void setHashKeyFieldName(String hashKeyFieldName) {
+		this.hashKeyFieldName = hashKeyFieldName;
+	}
+
+	public String getRangeKeyName() {
+		return rangeKeyName;
+	}
+
+	public void setRangeKeyName(String rangeKeyName) {
+		this.rangeKeyName = rangeKeyName;
+	}
+
+	public String getRangeKeyFieldName() {
+		return rangeKeyFieldName;
+	}
+
+	public void setRangeKeyFieldName(String rangeKeyFieldName) {
+		this.rangeKeyFieldName = rangeKeyFieldName;
+	}
+
+	public PROJECTION getProjection() {
+		return projection;
+	}
+
+	public void setProjection(PROJECTION projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Attribute names an INCLUDE index projects besides the keys.
+	 */
+	public Set<String> getNonKeyAttributes() {
+		return nonKeyAttributes;
+	}
+
+	public void setNonKeyAttributes(Set<String> nonKeyAttributes) {
+		this.nonKeyAttributes = nonKeyAttributes;
+	}
+
+	/**
+	 * Whether items read from this schema carry every attribute of the entity,
+	 * so they need no fetch from the table.
+	 */
+	public boolean isAllAttributesProjected() {
+		return allAttributesProjected;
+	}
+
+	public void setAllAttributesProjected(boolean allAttributesProjected) {
+		this.allAttributesProjected = allAttributesProjected;
+	}
+
+	/**
+	 * Whether the attribute is in the items of this schema. The table keys,
+	 * which every index projects, are not known here.
+	 */
+	public boolean isProjected(String attributeName) {
+		return projection == PROJECTION.ALL || isHashKey(attributeName) || isRangeKey(attributeName)
+				|| nonKeyAttributes.contains(attributeName);
+	}
+
+	public boolean isBaseTable() {
+		return indexName == null;
+	}
+
+	/**
+	 * Whether the attribute (or Java field) name is the hash or range key of this
+	 * schema.
+	 */
+	public boolean isHashKey(String name) {
+		return name != null && (name.equals(hashKeyName) || name.equals(hashKeyFieldName));
+	}
+
+	public boolean isRangeKey(String name) {
+		return name != null && (name.equals(rangeKeyName) || name.equals(rangeKeyFieldName));
+	}
+}
@@ -1,23 +1,31 @@
 package com.freebird.repository.ddbmapper;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.freebird.repository.ddbmapper.annotation.DDBAttr;
 import com.freebird.repository.ddbmapper.annotation.DDBDocument;
 import com.freebird.repository.ddbmapper.annotation.DDBHashKey;
 import com.freebird.repository.ddbmapper.annotation.DDBIgnore;
+import com.freebird.repository.ddbmapper.annotation.DDBIndexHashKey;
+import com.freebird.repository.ddbmapper.annotation.DDBIndexRangeKey;
 import com.freebird.repository.ddbmapper.annotation.DDBRangeKey;
 import com.freebird.repository.ddbmapper.annotation.DDBTable;
 import com.freebird.repository.ddbmapper.util.ThreadSafeDateFormatUtil;
@@ -48,6 +56,8 @@ public class DDBMapper {
 
   public final static int UPDATE_MODE = 2;
 
+  private final static Map<Class<?>, List<DDBIndexMeta>> KEY_SCHEMAS = new ConcurrentHashMap<Class<?>, List<DDBIndexMeta>>();
+
   /**
    * 撠V�澆�‵entity - get �
    * 
@@ -62,6 +72,29 @@ public class DDBMapper {
    */
   public static void populateEntity(Object entity, Map<String, AttributeValue> returnValue) throws DDBModelException,
       IllegalArgumentException, IllegalAccessException, ParseException, ClassNotFoundException, InstantiationException {
+    DDBMapper.populateEntity(entity, returnValue, false);
+  }
+
+  /**
+   * Same as populateEntity, but with lazy set List and Map fields hold the raw
+   * AttributeValues and convert each element the first time it is read (once).
+   * Document-typed fields are not deferred: the nested object is created and
+   * its scalar fields converted right away; only its own List and Map fields
+   * are lazy.
+   * 
+   * @param entity
+   * @param returnValue
+   * @param lazy
+   * @throws DDBModelException
+   * @throws IllegalArgumentException
+   * @throws IllegalAccessException
+   * @throws ParseException
+   * @throws ClassNotFoundException
+   * @throws InstantiationException
+   */
+  public static void populateEntity(Object entity, Map<String, AttributeValue> returnValue, boolean lazy)
+      throws DDBModelException, IllegalArgumentException, IllegalAccessException, ParseException, ClassNotFoundException,
+      InstantiationException {
     if (entity != null
         && (entity.getClass().isAnnotationPresent(DDBTable.class) || entity.getClass().isAnnotationPresent(DDBDocument.class))) {
       for (Field field : entity.getClass().getDeclaredFields()) {
@@ -72,7 +105,8 @@ public class DDBMapper {
         AttributeValue av = returnValue.get(key);
 
         if (av != null) {
-          field.set(entity, DDBMapper.getAttributeValuePayload(typeName, av, field));
+          field.set(entity, lazy ? DDBMapper.getLazyAttributeValuePayload(typeName, av, field)
+              : DDBMapper.getAttributeValuePayload(typeName, av, field));
         }
       }
     } else {
@@ -106,7 +140,7 @@ public class DDBMapper {
    * @throws IllegalArgumentException
    * @throws DDBModelException
    */
-  private static Object getAttributeValuePayload(String typeName, AttributeValue av, Field field) throws ParseException,
+  static Object getAttributeValuePayload(String typeName, AttributeValue av, Field field) throws ParseException,
       InstantiationException, IllegalAccessException, ClassNotFoundException, IllegalArgumentException, DDBModelException {
     Object obj = null;
     String thisTypeName = null;
@@ -187,6 +221,46 @@ public class DDBMapper {
     return obj;
   }
 
+  /**
+   * Lazy variant of getAttributeValuePayload: List and Map become wrappers over
+   * the raw AttributeValues, scalars are converted right away. Documents are
+   * populated eagerly by design: deferring them would take a generated subclass
+   * per document class, and their List and Map fields, which hold the bulk of
+   * large items, are still lazy.
+   */
+  private static Object getLazyAttributeValuePayload(String typeName, AttributeValue av, Field field)
+      throws ParseException, InstantiationException, IllegalAccessException, ClassNotFoundException,
+      IllegalArgumentException, DDBModelException {
+    switch (typeName) {
+      case "java.util.List":
+        return new LazyAttributeList(DDBMapper.getGenericTypeName(field, 0), av.l());
+      case "java.util.Map":
+        return new LazyAttributeMap(DDBMapper.getGenericTypeName(field, 1), av.m());
+      case "int":
+      case "java.lang.Integer":
+      case "long":
+      case "java.lang.Long":
+      case "double":
+      case "java.lang.Double":
+      case "float":
+      case "java.lang.Float":
+      case "boolean":
+      case "java.lang.Boolean":
+      case "java.util.Date":
+      case "java.lang.String":
+        return DDBMapper.getAttributeValuePayload(typeName, av, field);
+      default:
+        Object newObj = Class.forName(typeName).newInstance();
+        DDBMapper.populateEntity(newObj, av.m(), true);
+        return newObj;
+    }
+  }
+
+  private static String getGenericTypeName(Field field, int index) {
+    ParameterizedType type = (ParameterizedType) field.getGenericType();
+    return type.getActualTypeArguments()[index].getTypeName();
+  }
+
   /**
    * ������ttributeValueMap - insert �
    * 
@@ -262,6 +336,170 @@ public class DDBMapper {
     }
   }
 
+  /**
+   * Key schemas of the entity class: the base table first, then the local and
+   * global secondary indexes declared with DDBIndexRangeKey / DDBIndexHashKey.
+   * 
+   * @param entityClass
+   * @return
+   * @throws DDBModelException
+   */
+  public static List<DDBIndexMeta> extractKeySchemas(Class<?> entityClass) throws DDBModelException {
+    List<DDBIndexMeta> schemas = KEY_SCHEMAS.get(entityClass);
+    if (schemas != null)
+      return schemas;
+    if (!entityClass.isAnnotationPresent(DDBTable.class))
+      throw new DDBModelException("Entity no annotation present, like DDBTable.");
+
+    DDBIndexMeta table = new DDBIndexMeta();
+    Map<String, DDBIndexMeta> indexes = new LinkedHashMap<String, DDBIndexMeta>();
+    for (Field field : entityClass.getDeclaredFields()) {
+      String name = DDBMapper.getByDDBAnnotationPresent(field);
+      if (field.isAnnotationPresent(DDBHashKey.class)) {
+        table.setHashKeyName(field.getAnnotation(DDBHashKey.class).name());
+        table.setHashKeyFieldName(field.getName());
+      } else if (field.isAnnotationPresent(DDBRangeKey.class)) {
+        table.setRangeKeyName(field.getAnnotation(DDBRangeKey.class).name());
+        table.setRangeKeyFieldName(field.getName());
+      }
+
+      if (field.isAnnotationPresent(DDBIndexHashKey.class)) {
+        DDBIndexHashKey indexHashKey = field.getAnnotation(DDBIndexHashKey.class);
+        for (String indexName : indexHashKey.globalSecondaryIndexNames()) {
+          DDBIndexMeta index = DDBMapper.indexMeta(indexes, indexName, true, indexHashKey.projection(),
+              indexHashKey.nonKeyAttributes());
+          index.setHashKeyName(name);
+          index.setHashKeyFieldName(field.getName());
+        }
+      }
+      if (field.isAnnotationPresent(DDBIndexRangeKey.class)) {
+        DDBIndexRangeKey indexRangeKey = field.getAnnotation(DDBIndexRangeKey.class);
+        for (String indexName : indexRangeKey.globalSecondaryIndexNames()) {
+          DDBIndexMeta index = DDBMapper.indexMeta(indexes, indexName, true, indexRangeKey.projection(),
+              indexRangeKey.nonKeyAttributes());
+          index.setRangeKeyName(name);
+          index.setRangeKeyFieldName(field.getName());
+        }
+        for (String indexName : indexRangeKey.localSecondaryIndexNames()) {
+          DDBIndexMeta index = DDBMapper.indexMeta(indexes, indexName, false, indexRangeKey.projection(),
+              indexRangeKey.nonKeyAttributes());
+          index.setRangeKeyName(name);
+          index.setRangeKeyFieldName(field.getName());
+        }
+      }
+    }
+
+    if (table.getHashKeyName() == null)
+      throw new DDBModelException("Entity no DDBHashKey present.");
+
+    // base table first, then LSI, then GSI: the order DynamoQueryBuilder prefers
+    schemas = new ArrayList<DDBIndexMeta>();
+    schemas.add(table);
+    for (DDBIndexMeta index : indexes.values()) {
+      if (!index.isGlobal()) {
+        index.setHashKeyName(table.getHashKeyName());
+        index.setHashKeyFieldName(table.getHashKeyFieldName());
+        schemas.add(index);
+      }
+    }
+    for (DDBIndexMeta index : indexes.values()) {
+      if (index.isGlobal()) {
+        if (index.getHashKeyName() == null)
+          throw new DDBModelException("Global secondary index " + index.getIndexName() + " has no DDBIndexHashKey.");
+        schemas.add(index);
+      }
+    }
+
+    for (DDBIndexMeta index : schemas)
+      DDBMapper.resolveProjection(entityClass, table, index);
+
+    KEY_SCHEMAS.putIfAbsent(entityClass, Collections.unmodifiableList(schemas));
+    return KEY_SCHEMAS.get(entityClass);
+  }
+
+  private static DDBIndexMeta indexMeta(Map<String, DDBIndexMeta> indexes, String indexName, boolean global,
+      DDBIndexRangeKey.PROJECTION projection, String[] nonKeyAttributes) throws DDBModelException {
+    DDBIndexMeta index = indexes.get(indexName);
+    if (index == null) {
+      index = new DDBIndexMeta();
+      index.setIndexName(indexName);
+      index.setGlobal(global);
+      indexes.put(indexName, index);
+    } else if (index.isGlobal() != global) {
+      throw new DDBModelException("Index " + indexName + " declared as both global and local secondary index.");
+    }
+    if (projection != DDBIndexRangeKey.PROJECTION.ALL)
+      index.setProjection(projection);
+    for (String name : nonKeyAttributes)
+      index.getNonKeyAttributes().add(name);
+    return index;
+  }
+
+  /**
+   * Resolves the non-key attributes of an INCLUDE index to attribute names and
+   * records whether the index holds every attribute of the entity.
+   */
+  private static void resolveProjection(Class<?> entityClass, DDBIndexMeta table, DDBIndexMeta index)
+      throws DDBModelException {
+    if (index.getProjection() != DDBIndexRangeKey.PROJECTION.INCLUDE) {
+      if (!index.getNonKeyAttributes().isEmpty())
+        throw new DDBModelException("Index " + index.getIndexName() + " declares nonKeyAttributes but projects "
+            + index.getProjection() + ", not INCLUDE.");
+      index.setAllAttributesProjected(index.getProjection() == DDBIndexRangeKey.PROJECTION.ALL);
+      return;
+    }
+    if (index.getNonKeyAttributes().isEmpty())
+      throw new DDBModelException("INCLUDE index " + index.getIndexName() + " declares no nonKeyAttributes.");
+
+    Set<String> projected = new LinkedHashSet<String>();
+    for (String name : index.getNonKeyAttributes())
+      projected.add(DDBMapper.getAttributeName(entityClass, name));
+    index.setNonKeyAttributes(projected);
+
+    boolean all = true;
+    for (Field field : entityClass.getDeclaredFields()) {
+      if (field.isSynthetic() || Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(DDBIgnore.class))
+        continue;
+      String name = DDBMapper.getByDDBAnnotationPresent(field);
+      if (!index.isProjected(name) && !table.isHashKey(name) && !table.isRangeKey(name))
+        all = false;
+    }
+    index.setAllAttributesProjected(all);
+  }
+
+  /**
+   * Converts a key or condition value with the same rules used for entity fields.
+   * An AttributeValue is returned as is.
+   * 
+   * @param value
+   * @return
+   */
+  public static AttributeValue toAttributeValue(Object value) {
+    if (value == null || value instanceof AttributeValue)
+      return (AttributeValue) value;
+    return DDBMapper.extractField(value.getClass().getCanonicalName(), value);
+  }
+
+  /**
+   * Attribute name of an entity field, given its Java field name or its
+   * DDBAttr/DDBHashKey/DDBRangeKey name.
+   * 
+   * @param entityClass
+   * @param name
+   * @return
+   * @throws DDBModelException
+   */
+  public static String getAttributeName(Class<?> entityClass, String name) throws DDBModelException {
+    for (Field field : entityClass.getDeclaredFields()) {
+      if (field.isSynthetic() || field.isAnnotationPresent(DDBIgnore.class))
+        continue;
+      String attributeName = DDBMapper.getByDDBAnnotationPresent(field);
+      if (field.getName().equals(name) || attributeName.equals(name))
+        return attributeName;
+    }
+    throw new DDBModelException(entityClass.getSimpleName() + " has no attribute " + name + ".");
+  }
+
   private static Object keyGen(Object entity, int option, Field field, DDBHashKey.KEY_GEN keyGen, Object keyValue, String prefix)
       throws IllegalAccessException, NOKeyException {
     // gen. key
@@ -0,0 +1,107 @@
+package com.freebird.repository.ddbmapper;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * List field populated in lazy mode. Keeps the raw AttributeValues and converts
+ * an element the first time it is read; the first modification converts the
+ * remaining elements into a plain ArrayList. Serializes as that ArrayList.
+ */
+class LazyAttributeList extends AbstractList<Object> implements Serializable {
+
+	private static final long serialVersionUID = -2209745035472658301L;
+
+	private static final Object UNCONVERTED = new Object();
+
+	private final String typeName;
+
+	private int conversions;
+
+	private List<AttributeValue> raw;
+
+	private Object[] converted;
+
+	private ArrayList<Object> materialized;
+
+	LazyAttributeList(String typeName, List<AttributeValue> raw) {
+		this.typeName = typeName;
+		this.raw = raw;
+		this.converted = new Object[raw.size()];
+		Arrays.fill(converted, UNCONVERTED);
+	}
+
+	@Override
+	public synchronized Object get(int index) {
+		if (materialized != null)
+			return materialized.get(index);
+
+		Object value = converted[index];
+		if (value == UNCONVERTED) {
+			value = convert(raw.get(index));
+			converted[index] = value;
+		}
+		return value;
+	}
+
+	@Override
+	public synchronized int size() {
+		return materialized != null ? materialized.size() : raw.size();
+	}
+
+	@Override
+	public synchronized Object set(int index, Object element) {
+		return materialize().set(index, element);
+	}
+
+	@Override
+	public synchronized void add(int index, Object element) {
+		materialize().add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public synchronized Object remove(int index) {
+		Object removed = materialize().remove(index);
+		modCount++;
+		return removed;
+	}
+
+	private synchronized Object writeReplace() throws ObjectStreamException {
+		return new ArrayList<Object>(materialize());
+	}
+
+	private ArrayList<Object> materialize() {
+		if (materialized == null) {
+			ArrayList<Object> list = new ArrayList<Object>(raw.size());
+			for (int i = 0; i < raw.size(); i++)
+				list.add(get(i));
+			materialized = list;
+			raw = null;
+			converted = null;
+		}
+		return materialized;
+	}
+
+	/**
+	 * Raw values converted so far; each is converted at most once.
+	 */
+	synchronized int getConversionCount() {
+		return conversions;
+	}
+
+	private Object convert(AttributeValue av) {
+		conversions++;
+		try {
+			return DDBMapper.getAttributeValuePayload(typeName, av, null);
+		} catch (Exception e) {
+			throw new IllegalStateException("Lazy conversion of " + typeName + " failed.", e);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package com.freebird.repository.ddbmapper;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Map field populated in lazy mode. Keeps the raw AttributeValues and converts a
+ * value the first time it is read; the first modification, through the map or
+ * its views, converts the remaining values into a plain HashMap. Serializes as
+ * that HashMap.
+ */
+class LazyAttributeMap extends AbstractMap<String, Object> implements Serializable {
+
+	private static final long serialVersionUID = 4861525208317428735L;
+
+	private final String typeName;
+
+	private int conversions;
+
+	private Map<String, AttributeValue> raw;
+
+	private HashMap<String, Object> converted;
+
+	private HashMap<String, Object> materialized;
+
+	LazyAttributeMap(String typeName, Map<String, AttributeValue> raw) {
+		this.typeName = typeName;
+		this.raw = raw;
+		this.converted = new HashMap<String, Object>();
+	}
+
+	@Override
+	public synchronized Object get(Object key) {
+		if (materialized != null)
+			return materialized.get(key);
+
+		if (converted.containsKey(key))
+			return converted.get(key);
+		AttributeValue av = raw.get(key);
+		if (av == null)
+			return null;
+		Object value = convert(av);
+		converted.put((String) key, value);
+		return value;
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		return materialized != null ? materialized.containsKey(key) : raw.containsKey(key);
+	}
+
+	@Override
+	public synchronized int size() {
+		return materialized != null ? materialized.size() : raw.size();
+	}
+
+	@Override
+	public synchronized Object put(String key, Object value) {
+		return materialize().put(key, value);
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		return materialize().remove(key);
+	}
+
+	@Override
+	public synchronized void clear() {
+		materialize().clear();
+	}
+
+	@Override
+	public synchronized Set<Entry<String, Object>> entrySet() {
+		if (materialized != null)
+			return materialized.entrySet();
+
+		// write-through view; values are converted as the entries are read, and
+		// setValue or remove materialize the map first
+		return new AbstractSet<Entry<String, Object>>() {
+
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				synchronized (LazyAttributeMap.this) {
+					if (materialized != null)
+						return materialized.entrySet().iterator();
+					final Iterator<String> keys = new ArrayList<String>(raw.keySet()).iterator();
+					return new Iterator<Entry<String, Object>>() {
+
+						private String current;
+
+						@Override
+						public boolean hasNext() {
+							return keys.hasNext();
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							current = keys.next();
+							return new LazyEntry(current);
+						}
+
+						@Override
+						public void remove() {
+							if (current == null)
+								throw new IllegalStateException();
+							LazyAttributeMap.this.remove(current);
+							current = null;
+						}
+					};
+				}
+			}
+
+			@Override
+			public int size() {
+				return LazyAttributeMap.this.size();
+			}
+		};
+	}
+
+	private synchronized Object writeReplace() throws ObjectStreamException {
+		return new HashMap<String, Object>(materialize());
+	}
+
+	private class LazyEntry implements Entry<String, Object> {
+
+		private final String key;
+
+		LazyEntry(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public Object getValue() {
+			return LazyAttributeMap.this.get(key);
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			return LazyAttributeMap.this.put(key, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry))
+				return false;
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+		}
+	}
+
+	private HashMap<String, Object> materialize() {
+		if (materialized == null) {
+			HashMap<String, Object> map = new HashMap<String, Object>();
+			for (String key : raw.keySet())
+				map.put(key, get(key));
+			materialized = map;
+			raw = null;
+			converted = null;
+		}
+		return materialized;
+	}
+
+	/**
+	 * Raw values converted so far; each is converted at most once.
+	 */
+	synchronized int getConversionCount() {
+		return conversions;
+	}
+
+	private Object convert(AttributeValue av) {
+		conversions++;
+		try {
+			return DDBMapper.getAttributeValuePayload(typeName, av, null);
+		} catch (Exception e) {
+			throw new IllegalStateException("Lazy conversion of " + typeName + " failed.", e);
+		}
+	}
+}
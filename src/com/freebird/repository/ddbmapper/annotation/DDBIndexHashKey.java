@@ -0,0 +1,31 @@
+package com.freebird.repository.ddbmapper.annotation;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field as hash key of the given global secondary indexes. The
+ * attribute name is taken from DDBAttr (or the field name).
+ * The projection applies to every listed index. KEYS_ONLY indexes, and INCLUDE
+ * indexes whose nonKeyAttributes leave out attributes of the entity, make
+ * DynamoQueryBuilder batch-fetch the full items from the table.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(FIELD)
+public @interface DDBIndexHashKey {
+
+	String[] globalSecondaryIndexNames();
+
+	DDBIndexRangeKey.PROJECTION projection() default DDBIndexRangeKey.PROJECTION.ALL;
+
+	/**
+	 * Attributes (by attribute or field name) an INCLUDE index projects besides
+	 * the table and index keys; required for INCLUDE, not allowed otherwise.
+	 */
+	String[] nonKeyAttributes() default {};
+}
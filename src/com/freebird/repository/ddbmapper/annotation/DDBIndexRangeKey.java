@@ -0,0 +1,34 @@
+package com.freebird.repository.ddbmapper.annotation;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field as range key of the given global and/or local secondary
+ * indexes. A local secondary index shares the DDBHashKey of the table. The
+ * attribute name is taken from DDBAttr (or the field name).
+ * The projection applies to every listed index. KEYS_ONLY indexes, and INCLUDE
+ * indexes whose nonKeyAttributes leave out attributes of the entity, make
+ * DynamoQueryBuilder batch-fetch the full items from the table.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(FIELD)
+public @interface DDBIndexRangeKey {
+
+	public enum PROJECTION {ALL, KEYS_ONLY, INCLUDE};
+
+	String[] globalSecondaryIndexNames() default {};
+	String[] localSecondaryIndexNames() default {};
+	PROJECTION projection() default PROJECTION.ALL;
+
+	/**
+	 * Attributes (by attribute or field name) an INCLUDE index projects besides
+	 * the table and index keys; required for INCLUDE, not allowed otherwise.
+	 */
+	String[] nonKeyAttributes() default {};
+}
@@ -0,0 +1,149 @@
+package com.freebird.repository.hotkey;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size Count-Min Sketch of key frequencies with conservative update: an
+ * add raises only the counters that are below the key's new estimate, which
+ * keeps keys that share counters with others from inflating each other.
+ * Counters are updated by compare-and-set, so concurrent adds never lock and
+ * are never lost; estimates never undercount and overcount by at most about
+ * 2 * total / width with probability 1 - 2^-depth, usually far less.
+ */
+public class CountMinSketch {
+
+	private final int depth;
+
+	private final int width;
+
+	private final int mask;
+
+	private final AtomicLongArray counters;
+
+	private final AtomicLong totalCount = new AtomicLong();
+
+	/**
+	 * @param depth number of hash rows
+	 * @param width counters per row, rounded up to a power of two
+	 */
+	public CountMinSketch(int depth, int width) {
+		if (depth < 1 || width < 1)
+			throw new IllegalArgumentException("depth and width must be positive.");
+		int size = 1;
+		while (size < width)
+			size <<= 1;
+		this.depth = depth;
+		this.width = size;
+		this.mask = size - 1;
+		this.counters = new AtomicLongArray(depth * size);
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Adds count occurrences of the key.
+	 *
+	 * @return the estimated frequency of the key after the add
+	 */
+	public long add(String key, long count) {
+		int[] indexes = indexes(key);
+		long[] values = new long[depth];
+		long target;
+		boolean raced;
+		do {
+			long estimate = Long.MAX_VALUE;
+			for (int row = 0; row < depth; row++) {
+				values[row] = counters.get(indexes[row]);
+				estimate = Math.min(estimate, values[row]);
+			}
+			target = estimate + count;
+			// a counter changed since it was read means a concurrent add or decay,
+			// so start over from the new estimate rather than lose either update
+			raced = false;
+			for (int row = 0; row < depth && !raced; row++)
+				raced = values[row] < target && !counters.compareAndSet(indexes[row], values[row], target);
+		} while (raced);
+		totalCount.addAndGet(count);
+		return target;
+	}
+
+	public long estimate(String key) {
+		long estimate = Long.MAX_VALUE;
+		for (int index : indexes(key))
+			estimate = Math.min(estimate, counters.get(index));
+		return estimate;
+	}
+
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Median counter of the first row: roughly what a key that was never added
+	 * reads from its counters, since most counters only hold other keys. It is
+	 * 0 while fewer keys than counters were added and grows with total / width
+	 * once the sketch is crowded.
+	 */
+	public long noiseFloor() {
+		long[] row = new long[width];
+		for (int i = 0; i < width; i++)
+			row[i] = counters.get(i);
+		Arrays.sort(row);
+		return row[width / 2];
+	}
+
+	/**
+	 * Halves every counter, so old traffic weighs less than recent traffic.
+	 */
+	public void decay() {
+		for (int i = 0; i < counters.length(); i++) {
+			long value;
+			do {
+				value = counters.get(i);
+			} while (!counters.compareAndSet(i, value, value >> 1));
+		}
+		long total;
+		do {
+			total = totalCount.get();
+		} while (!totalCount.compareAndSet(total, total >> 1));
+	}
+
+	public void clear() {
+		for (int i = 0; i < counters.length(); i++)
+			counters.set(i, 0);
+		totalCount.set(0);
+	}
+
+	private int[] indexes(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		int[] indexes = new int[depth];
+		for (int row = 0; row < depth; row++)
+			indexes[row] = row * width + ((h1 + row * h2) & mask);
+		return indexes;
+	}
+
+	// 64-bit FNV-1a over the chars, finished with the murmur3 mixer
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
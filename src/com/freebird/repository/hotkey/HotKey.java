@@ -0,0 +1,42 @@
+package com.freebird.repository.hotkey;
+
+/**
+ * A hash key and its estimated access count within one table and operation.
+ */
+public class HotKey {
+
+	private final String key;
+
+	private final long estimatedCount;
+
+	private final double share;
+
+	public HotKey(String key, long estimatedCount, double share) {
+		this.key = key;
+		this.estimatedCount = estimatedCount;
+		this.share = share;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Estimated accesses, scaled up by the sample rate.
+	 */
+	public long getEstimatedCount() {
+		return estimatedCount;
+	}
+
+	/**
+	 * Fraction of all sampled accesses of the table and operation.
+	 */
+	public double getShare() {
+		return share;
+	}
+
+	@Override
+	public String toString() {
+		return key + "=" + estimatedCount + String.format(" (%.1f%%)", share * 100);
+	}
+}
@@ -0,0 +1,201 @@
+package com.freebird.repository.hotkey;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Samples hash-key accesses per table and operation to find the keys behind
+ * hot partitions and throttling. Every table and operation pair gets a
+ * fixed-size {@link CountMinSketch}, a top-K heap and a {@link HyperLogLog}, so
+ * memory stays constant however many distinct keys are seen.
+ *
+ * Set it on a repository with
+ * {@link com.freebird.repository.DynamoCRUDRepository#setHotKeyDetector}, and
+ * read it through {@link #getHotKeys}, {@link #getSkewRatio} or JMX after
+ * {@link #registerMBean}. Call {@link #decay()} periodically to favour recent
+ * traffic.
+ */
+public class HotKeyDetector implements HotKeyDetectorMXBean {
+
+	public static final int DEFAULT_DEPTH = 4;
+
+	public static final int DEFAULT_WIDTH = 2048;
+
+	public static final int DEFAULT_TOP_K = 32;
+
+	private final double sampleRate;
+
+	private final int depth;
+
+	private final int width;
+
+	private final int topK;
+
+	private final Map<String, KeyFrequencySketch> sketches = new ConcurrentHashMap<String, KeyFrequencySketch>();
+
+	public HotKeyDetector() {
+		this(1.0, DEFAULT_DEPTH, DEFAULT_WIDTH, DEFAULT_TOP_K);
+	}
+
+	public HotKeyDetector(double sampleRate) {
+		this(sampleRate, DEFAULT_DEPTH, DEFAULT_WIDTH, DEFAULT_TOP_K);
+	}
+
+	/**
+	 * @param sampleRate fraction of accesses recorded, in (0, 1]
+	 * @param depth      Count-Min Sketch rows
+	 * @param width      Count-Min Sketch counters per row
+	 * @param topK       hot keys tracked per table and operation
+	 */
+	public HotKeyDetector(double sampleRate, int depth, int width, int topK) {
+		if (sampleRate <= 0 || sampleRate > 1)
+			throw new IllegalArgumentException("sampleRate must be in (0, 1].");
+		if (topK < 1)
+			throw new IllegalArgumentException("topK must be positive.");
+		this.sampleRate = sampleRate;
+		this.depth = depth;
+		this.width = width;
+		this.topK = topK;
+	}
+
+	@Override
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	public void record(String tableName, String operation, AttributeValue hashKey) {
+		if (hashKey != null && sampled())
+			sketch(tableName, operation).record(keyString(hashKey));
+	}
+
+	public void record(String tableName, String operation, String hashKey) {
+		if (hashKey != null && sampled())
+			sketch(tableName, operation).record(hashKey);
+	}
+
+	/**
+	 * Up to n hottest hash keys of the table and operation, hottest first. Only
+	 * keys whose count stands clearly above the sketch's collision noise are
+	 * returned, with that noise subtracted, so uniform traffic over many keys
+	 * returns none.
+	 */
+	@Override
+	public List<HotKey> getHotKeys(String tableName, String operation, int n) {
+		List<HotKey> hotKeys = new ArrayList<HotKey>();
+		KeyFrequencySketch sketch = sketches.get(name(tableName, operation));
+		if (sketch == null)
+			return hotKeys;
+
+		long total = sketch.getTotalCount();
+		for (Map.Entry<String, Long> entry : sketch.top(n))
+			hotKeys.add(new HotKey(entry.getKey(), Math.round(entry.getValue() / sampleRate),
+					total == 0 ? 0 : (double) entry.getValue() / total));
+		return hotKeys;
+	}
+
+	/**
+	 * Accesses of the hottest key divided by the mean accesses per distinct key,
+	 * growing as one key dominates. It is 1 for uniform traffic once no key
+	 * stands above the sketch noise; with fewer distinct keys than sketch width a
+	 * key that shares all its counters can still read up to about twice its
+	 * count. Both the hottest count and the distinct key count (a HyperLogLog,
+	 * about 2% error) are estimates, so the ratio is approximate.
+	 */
+	@Override
+	public double getSkewRatio(String tableName, String operation) {
+		KeyFrequencySketch sketch = sketches.get(name(tableName, operation));
+		return sketch == null ? 0 : skewRatio(sketch);
+	}
+
+	/**
+	 * Sampled accesses of the table and operation; divide by the sample rate for
+	 * the estimated total.
+	 */
+	public long getSampledCount(String tableName, String operation) {
+		KeyFrequencySketch sketch = sketches.get(name(tableName, operation));
+		return sketch == null ? 0 : sketch.getTotalCount();
+	}
+
+	@Override
+	public List<String> getTrackedOperations() {
+		return new ArrayList<String>(sketches.keySet());
+	}
+
+	@Override
+	public double getMaxSkewRatio() {
+		double max = 0;
+		for (KeyFrequencySketch sketch : sketches.values())
+			max = Math.max(max, skewRatio(sketch));
+		return max;
+	}
+
+	/**
+	 * Halves all counts, so older accesses weigh less.
+	 */
+	@Override
+	public void decay() {
+		for (KeyFrequencySketch sketch : sketches.values())
+			sketch.decay();
+	}
+
+	@Override
+	public void reset() {
+		for (KeyFrequencySketch sketch : sketches.values())
+			sketch.clear();
+	}
+
+	/**
+	 * Registers this detector with the platform MBean server as
+	 * com.freebird.repository:type=HotKeyDetector,name=[name].
+	 *
+	 * @param name
+	 * @throws JMException
+	 */
+	public void registerMBean(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName("com.freebird.repository:type=HotKeyDetector,name=" + ObjectName.quote(name)));
+	}
+
+	private boolean sampled() {
+		return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	private KeyFrequencySketch sketch(String tableName, String operation) {
+		return sketches.computeIfAbsent(name(tableName, operation), k -> new KeyFrequencySketch(depth, width, topK));
+	}
+
+	private static String name(String tableName, String operation) {
+		return tableName + "|" + operation;
+	}
+
+	private static double skewRatio(KeyFrequencySketch sketch) {
+		long total = sketch.getTotalCount();
+		if (total == 0)
+			return 0;
+		List<Map.Entry<String, Long>> top = sketch.top(1);
+		if (top.isEmpty())
+			return 1;
+		long distinct = Math.max(1, sketch.estimateDistinct());
+		return Math.max(1, top.get(0).getValue() * (double) distinct / total);
+	}
+
+	private static String keyString(AttributeValue value) {
+		if (value.s() != null)
+			return value.s();
+		if (value.n() != null)
+			return value.n();
+		if (value.b() != null)
+			return Base64.getEncoder().encodeToString(value.b().asByteArray());
+		return value.toString();
+	}
+}
@@ -0,0 +1,29 @@
+package com.freebird.repository.hotkey;
+
+import java.util.List;
+
+/**
+ * JMX view of a {@link HotKeyDetector}.
+ */
+public interface HotKeyDetectorMXBean {
+
+	double getSampleRate();
+
+	/**
+	 * Sampled table and operation pairs, as "table|operation".
+	 */
+	List<String> getTrackedOperations();
+
+	/**
+	 * Highest skew ratio over all tracked table and operation pairs.
+	 */
+	double getMaxSkewRatio();
+
+	List<HotKey> getHotKeys(String tableName, String operation, int n);
+
+	double getSkewRatio(String tableName, String operation);
+
+	void decay();
+
+	void reset();
+}
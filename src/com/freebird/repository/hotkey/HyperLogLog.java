@@ -0,0 +1,74 @@
+package com.freebird.repository.hotkey;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * HyperLogLog estimate of the number of distinct keys, in 2^precision
+ * registers. The standard error is about 1.04 / sqrt(2^precision), 1.6% at the
+ * default precision of 12, however many keys are added. Registers are atomics,
+ * so concurrent adds never lock.
+ */
+public class HyperLogLog {
+
+	public static final int DEFAULT_PRECISION = 12;
+
+	private final int precision;
+
+	private final AtomicIntegerArray registers;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision log2 of the number of registers, 4 to 18
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18)
+			throw new IllegalArgumentException("precision must be in [4, 18].");
+		this.precision = precision;
+		this.registers = new AtomicIntegerArray(1 << precision);
+	}
+
+	public void add(String key) {
+		long hash = CountMinSketch.hash(key);
+		int index = (int) (hash >>> (64 - precision));
+		// the guard bit caps the rank when the remaining bits are all zero
+		int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+		int current = registers.get(index);
+		while (current < rank && !registers.compareAndSet(index, current, rank))
+			current = registers.get(index);
+	}
+
+	public long estimate() {
+		return estimateUnion(null);
+	}
+
+	/**
+	 * Distinct keys added to this or the other sketch, which must have the same
+	 * precision; null counts only this one.
+	 */
+	public long estimateUnion(HyperLogLog other) {
+		if (other != null && other.precision != precision)
+			throw new IllegalArgumentException("Cannot combine precisions " + precision + " and " + other.precision + ".");
+		int m = registers.length();
+		double sum = 0;
+		int zeros = 0;
+		for (int i = 0; i < m; i++) {
+			int rank = other == null ? registers.get(i) : Math.max(registers.get(i), other.registers.get(i));
+			sum += 1.0 / (1L << rank);
+			if (rank == 0)
+				zeros++;
+		}
+		double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+		// small cardinalities are more accurate by linear counting
+		if (estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}
+
+	public void clear() {
+		for (int i = 0; i < registers.length(); i++)
+			registers.set(i, 0);
+	}
+}
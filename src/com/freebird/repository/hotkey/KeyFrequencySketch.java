@@ -0,0 +1,155 @@
+package com.freebird.repository.hotkey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-Min Sketch plus a min-heap of the keys with the highest estimates, and
+ * a HyperLogLog of the distinct keys.
+ *
+ * Recording is lock-free unless the key's estimate exceeds the smallest count
+ * in the heap; then the heap is updated only if its lock is free. A skipped
+ * update is caught up by the key's next access, so a busy lock never blocks the
+ * request path.
+ *
+ * Distinct keys are counted over the current and the previous decay period, so
+ * the count follows traffic the way the decayed frequencies do.
+ */
+class KeyFrequencySketch {
+
+	private final CountMinSketch sketch;
+
+	private volatile HyperLogLog distinct = new HyperLogLog();
+
+	private volatile HyperLogLog previousDistinct = new HyperLogLog();
+
+	private final int capacity;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final PriorityQueue<Entry> heap;
+
+	private final Map<String, Entry> entries;
+
+	// smallest count in a full heap; lower estimates cannot enter it
+	private volatile long threshold;
+
+	KeyFrequencySketch(int depth, int width, int capacity) {
+		this.sketch = new CountMinSketch(depth, width);
+		this.capacity = capacity;
+		this.heap = new PriorityQueue<Entry>(capacity, Comparator.comparingLong((Entry entry) -> entry.count));
+		this.entries = new HashMap<String, Entry>(capacity * 2);
+	}
+
+	void record(String key) {
+		distinct.add(key);
+		long estimate = sketch.add(key, 1);
+		if (estimate <= threshold || !lock.tryLock())
+			return;
+		try {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				heap.remove(entry);
+				entry.count = estimate;
+				heap.add(entry);
+			} else if (heap.size() < capacity) {
+				entry = new Entry(key, estimate);
+				entries.put(key, entry);
+				heap.add(entry);
+			} else if (estimate > heap.peek().count) {
+				entries.remove(heap.poll().key);
+				entry = new Entry(key, estimate);
+				entries.put(key, entry);
+				heap.add(entry);
+			}
+			threshold = heap.size() < capacity ? 0 : heap.peek().count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Tracked keys by estimate above the noise floor, highest first. A key is
+	 * left out unless its estimate is more than twice the floor, since below
+	 * that it cannot be told apart from the other keys sharing its counters.
+	 */
+	List<Map.Entry<String, Long>> top(int n) {
+		List<String> keys;
+		lock.lock();
+		try {
+			keys = new ArrayList<String>(entries.keySet());
+		} finally {
+			lock.unlock();
+		}
+
+		long noiseFloor = sketch.noiseFloor();
+		Map<String, Long> estimates = new HashMap<String, Long>();
+		for (String key : keys) {
+			long estimate = sketch.estimate(key);
+			if (estimate > 2 * noiseFloor)
+				estimates.put(key, estimate - noiseFloor);
+		}
+		List<Map.Entry<String, Long>> top = new ArrayList<Map.Entry<String, Long>>(estimates.entrySet());
+		top.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+		return top.size() > n ? new ArrayList<Map.Entry<String, Long>>(top.subList(0, n)) : top;
+	}
+
+	long getTotalCount() {
+		return sketch.getTotalCount();
+	}
+
+	long estimateDistinct() {
+		return distinct.estimateUnion(previousDistinct);
+	}
+
+	void decay() {
+		lock.lock();
+		try {
+			sketch.decay();
+			HyperLogLog recycled = previousDistinct;
+			recycled.clear();
+			previousDistinct = distinct;
+			distinct = recycled;
+			List<Entry> decayed = new ArrayList<Entry>(heap);
+			heap.clear();
+			for (Entry entry : decayed) {
+				entry.count >>= 1;
+				heap.add(entry);
+			}
+			threshold = heap.size() < capacity ? 0 : heap.peek().count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void clear() {
+		lock.lock();
+		try {
+			sketch.clear();
+			distinct.clear();
+			previousDistinct.clear();
+			heap.clear();
+			entries.clear();
+			threshold = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static class Entry {
+
+		final String key;
+
+		long count;
+
+		Entry(String key, long count) {
+			this.key = key;
+			this.count = count;
+		}
+	}
+}
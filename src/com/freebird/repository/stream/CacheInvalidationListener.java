@@ -0,0 +1,37 @@
+package com.freebird.repository.stream;
+
+import java.util.function.Function;
+
+import org.springframework.cache.Cache;
+
+/**
+ * Evicts the changed item from a Spring cache on every INSERT, MODIFY and
+ * REMOVE, so caches stay fresh when other services write to the table.
+ *
+ * The key mapper must build the same key the cache was filled with, e.g. for
+ * {@code @Cacheable(key = "#customerId")} on a stream with images:
+ * {@code event -> (event.getNewEntity() != null ? event.getNewEntity() : event.getOldEntity()).getCustomerId()},
+ * or from the raw keys on a KEYS_ONLY stream:
+ * {@code event -> event.getKeys().get("customerId").s()}. Returning null skips
+ * the eviction.
+ */
+public class CacheInvalidationListener<T> implements DDBStreamListener<T> {
+
+	private final Cache cache;
+
+	private final Function<DDBChangeEvent<T>, Object> keyMapper;
+
+	public CacheInvalidationListener(Cache cache, Function<DDBChangeEvent<T>, Object> keyMapper) {
+		if (cache == null || keyMapper == null)
+			throw new IllegalArgumentException("cache and keyMapper are required.");
+		this.cache = cache;
+		this.keyMapper = keyMapper;
+	}
+
+	@Override
+	public void onChange(DDBChangeEvent<T> event) {
+		Object key = keyMapper.apply(event);
+		if (key != null)
+			cache.evict(key);
+	}
+}
@@ -0,0 +1,62 @@
+package com.freebird.repository.stream;
+
+import java.util.Map;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+
+/**
+ * One stream record decoded into entities. newEntity / oldEntity are null when
+ * the stream view type does not carry the image (or for INSERT / REMOVE).
+ */
+public class DDBChangeEvent<T> {
+
+	private final OperationType operation;
+
+	private final String shardId;
+
+	private final String sequenceNumber;
+
+	private final Map<String, AttributeValue> keys;
+
+	private final T newEntity;
+
+	private final T oldEntity;
+
+	public DDBChangeEvent(OperationType operation, String shardId, String sequenceNumber,
+			Map<String, AttributeValue> keys, T newEntity, T oldEntity) {
+		this.operation = operation;
+		this.shardId = shardId;
+		this.sequenceNumber = sequenceNumber;
+		this.keys = keys;
+		this.newEntity = newEntity;
+		this.oldEntity = oldEntity;
+	}
+
+	public OperationType getOperation() {
+		return operation;
+	}
+
+	public String getShardId() {
+		return shardId;
+	}
+
+	public String getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	/**
+	 * Key attributes of the changed item.
+	 */
+	public Map<String, AttributeValue> getKeys() {
+		return keys;
+	}
+
+	public T getNewEntity() {
+		return newEntity;
+	}
+
+	public T getOldEntity() {
+		return oldEntity;
+	}
+}
@@ -0,0 +1,15 @@
+package com.freebird.repository.stream;
+
+/**
+ * Last processed sequence number per stream shard.
+ */
+public interface DDBCheckpointStore {
+
+	/**
+	 * @return the last checkpointed sequence number, or null to start from the
+	 *         oldest record of the shard
+	 */
+	String getCheckpoint(String streamArn, String shardId);
+
+	void checkpoint(String streamArn, String shardId, String sequenceNumber);
+}
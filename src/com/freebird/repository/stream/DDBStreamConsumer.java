@@ -0,0 +1,399 @@
+package com.freebird.repository.stream;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.freebird.repository.ddbmapper.DDBMapper;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.dynamodb.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.ShardIteratorType;
+import software.amazon.awssdk.services.dynamodb.model.StreamDescription;
+import software.amazon.awssdk.services.dynamodb.model.StreamRecord;
+import software.amazon.awssdk.services.dynamodb.model.TrimmedDataAccessException;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+/**
+ * Reads a DynamoDB stream, decodes NewImage/OldImage into entities with
+ * {@link DDBMapper} and delivers {@link DDBChangeEvent}s to the registered
+ * listeners.
+ *
+ * Shards are read in parallel, each by at most one worker at a time, so the
+ * records of a shard are delivered in order; a child shard is read only after
+ * its parent is exhausted. The last delivered sequence number of each shard is
+ * stored in the {@link DDBCheckpointStore} after the listeners returned, which
+ * makes delivery at least once.
+ *
+ * A record whose listeners or decoding fail is tried again on the next poll,
+ * up to {@link #setMaxAttempts maxAttempts} times; it is then handed to the
+ * {@link DDBStreamFailureHandler} (by default logged) and skipped, so one bad
+ * record cannot block its shard.
+ *
+ * Shards the stream no longer describes (trimmed after the stream retention)
+ * are forgotten. The consumer can be started again after {@link #stop()}.
+ */
+public class DDBStreamConsumer<T> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DDBStreamConsumer.class);
+
+	private static final int GET_RECORDS_LIMIT = 1000;
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	private final DynamoDbStreamsClient streams;
+
+	private final String streamArn;
+
+	private final Class<T> entityClass;
+
+	private final DDBCheckpointStore checkpoints;
+
+	private final int parallelism;
+
+	private volatile ExecutorService workers;
+
+	private final List<DDBStreamListener<T>> listeners = new CopyOnWriteArrayList<DDBStreamListener<T>>();
+
+	private final Map<String, ShardState> shards = new ConcurrentHashMap<String, ShardState>();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong skipped = new AtomicLong();
+
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+	private volatile DDBStreamFailureHandler failureHandler = (streamArn, shardId, record, failure) -> LOG.error(
+			"Skipping record {} of {} shard {} after repeated failures", record.dynamodb().sequenceNumber(), streamArn,
+			shardId, failure);
+
+	private volatile Exception lastFailure;
+
+	private ScheduledExecutorService scheduler;
+
+	public DDBStreamConsumer(DynamoDbStreamsClient streams, String streamArn, Class<T> entityClass,
+			DDBCheckpointStore checkpoints, int parallelism) {
+		this.streams = streams;
+		this.streamArn = streamArn;
+		this.entityClass = entityClass;
+		this.checkpoints = checkpoints;
+		this.parallelism = parallelism;
+		this.workers = newWorkers();
+	}
+
+	public void addListener(DDBStreamListener<T> listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(DDBStreamListener<T> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Deliveries of one record before it is skipped; defaults to 3.
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException("maxAttempts must be positive.");
+		this.maxAttempts = maxAttempts;
+	}
+
+	public void setFailureHandler(DDBStreamFailureHandler failureHandler) {
+		if (failureHandler == null)
+			throw new IllegalArgumentException("failureHandler is required.");
+		this.failureHandler = failureHandler;
+	}
+
+	/**
+	 * Polls the stream in the background, waiting pollIntervalMillis between
+	 * polls.
+	 */
+	public synchronized void start(long pollIntervalMillis) {
+		if (scheduler != null)
+			return;
+		if (workers.isShutdown())
+			workers = newWorkers();
+		scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("ddb-stream-poll"));
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				poll();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				recordFailure(e);
+			}
+		}, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops background polling and the shard workers; {@link #start} starts
+	 * them again.
+	 */
+	public void stop() throws InterruptedException {
+		ScheduledExecutorService current;
+		ExecutorService currentWorkers;
+		synchronized (this) {
+			current = scheduler;
+			scheduler = null;
+			currentWorkers = workers;
+		}
+		if (current != null) {
+			current.shutdown();
+			current.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		currentWorkers.shutdown();
+		currentWorkers.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Discovers new shards and reads one batch from every readable shard, in
+	 * parallel.
+	 *
+	 * @return the number of records delivered to the listeners
+	 * @throws InterruptedException
+	 * @throws IllegalStateException after {@link #stop()}
+	 */
+	public int poll() throws InterruptedException {
+		synchronized (shards) {
+			ExecutorService current = workers;
+			if (current.isShutdown())
+				throw new IllegalStateException("The consumer is stopped, start it again to poll.");
+			refreshShards();
+
+			// decide before submitting, so a parent finishing meanwhile does not
+			// let its child into the same poll
+			List<ShardState> readable = new ArrayList<ShardState>();
+			for (ShardState shard : shards.values()) {
+				if (isReadable(shard))
+					readable.add(shard);
+			}
+
+			List<Future<Integer>> reads = new ArrayList<Future<Integer>>();
+			try {
+				for (final ShardState shard : readable)
+					reads.add(current.submit(() -> readShard(shard)));
+			} catch (RejectedExecutionException e) {
+				throw new IllegalStateException("The consumer was stopped while polling.", e);
+			}
+
+			int delivered = 0;
+			for (Future<Integer> read : reads) {
+				try {
+					delivered += read.get();
+				} catch (ExecutionException e) {
+					recordFailure(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+				}
+			}
+			return delivered;
+		}
+	}
+
+	/**
+	 * Listener and stream failures so far; failed records are delivered again.
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	public Exception getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Records given up on after maxAttempts failures.
+	 */
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+	/**
+	 * Number of shards currently known, open or read to the end.
+	 */
+	int getTrackedShardCount() {
+		return shards.size();
+	}
+
+	// finished shards are kept while described, so they are not read again
+	private void refreshShards() {
+		Set<String> described = new HashSet<String>();
+		String exclusiveStartShardId = null;
+		do {
+			StreamDescription description = streams.describeStream(DescribeStreamRequest.builder().streamArn(streamArn)
+					.exclusiveStartShardId(exclusiveStartShardId).build()).streamDescription();
+			for (Shard shard : description.shards()) {
+				described.add(shard.shardId());
+				shards.putIfAbsent(shard.shardId(), new ShardState(shard.shardId(), shard.parentShardId()));
+			}
+			exclusiveStartShardId = description.lastEvaluatedShardId();
+		} while (exclusiveStartShardId != null);
+		shards.keySet().retainAll(described);
+	}
+
+	// a parent that is no longer described has been trimmed, so it counts as read
+	private boolean isReadable(ShardState shard) {
+		if (shard.finished)
+			return false;
+		ShardState parent = shard.parentShardId == null ? null : shards.get(shard.parentShardId);
+		return parent == null || parent.finished;
+	}
+
+	private int readShard(ShardState shard) throws Exception {
+		if (shard.iterator == null)
+			shard.iterator = shardIterator(shard.shardId);
+
+		GetRecordsResponse response;
+		try {
+			response = streams.getRecords(GetRecordsRequest.builder().shardIterator(shard.iterator)
+					.limit(GET_RECORDS_LIMIT).build());
+		} catch (ExpiredIteratorException e) {
+			shard.iterator = null;
+			return 0;
+		}
+
+		int delivered = 0;
+		String lastSequenceNumber = null;
+		try {
+			for (Record record : response.records()) {
+				try {
+					deliver(shard.shardId, record);
+					delivered++;
+				} catch (Exception e) {
+					recordFailure(e);
+					if (!giveUp(shard, record, e)) {
+						// resume at this record on the next poll
+						shard.iterator = null;
+						return delivered;
+					}
+				}
+				lastSequenceNumber = record.dynamodb().sequenceNumber();
+			}
+		} finally {
+			if (lastSequenceNumber != null)
+				checkpoints.checkpoint(streamArn, shard.shardId, lastSequenceNumber);
+		}
+
+		shard.iterator = response.nextShardIterator();
+		if (shard.iterator == null)
+			shard.finished = true;
+		return delivered;
+	}
+
+	/**
+	 * Counts a failed delivery of the record and, at maxAttempts, hands it to
+	 * the failure handler.
+	 *
+	 * @return true if the record is to be skipped
+	 */
+	private boolean giveUp(ShardState shard, Record record, Exception failure) {
+		String sequenceNumber = record.dynamodb().sequenceNumber();
+		int attempts = sequenceNumber.equals(shard.failingSequenceNumber) ? shard.failedAttempts + 1 : 1;
+		shard.failingSequenceNumber = sequenceNumber;
+		shard.failedAttempts = attempts;
+		if (attempts < maxAttempts)
+			return false;
+
+		try {
+			failureHandler.onSkippedRecord(streamArn, shard.shardId, record, failure);
+		} catch (Exception e) {
+			recordFailure(e);
+			return false;
+		}
+		shard.failingSequenceNumber = null;
+		shard.failedAttempts = 0;
+		skipped.incrementAndGet();
+		return true;
+	}
+
+	private String shardIterator(String shardId) {
+		String checkpoint = checkpoints.getCheckpoint(streamArn, shardId);
+		if (checkpoint != null) {
+			try {
+				return streams.getShardIterator(GetShardIteratorRequest.builder().streamArn(streamArn).shardId(shardId)
+						.shardIteratorType(ShardIteratorType.AFTER_SEQUENCE_NUMBER).sequenceNumber(checkpoint).build())
+						.shardIterator();
+			} catch (TrimmedDataAccessException e) {
+				// the checkpoint is older than the stream retention
+			}
+		}
+		return streams.getShardIterator(GetShardIteratorRequest.builder().streamArn(streamArn).shardId(shardId)
+				.shardIteratorType(ShardIteratorType.TRIM_HORIZON).build()).shardIterator();
+	}
+
+	private void deliver(String shardId, Record record) throws Exception {
+		StreamRecord streamRecord = record.dynamodb();
+		DDBChangeEvent<T> event = new DDBChangeEvent<T>(record.eventName(), shardId, streamRecord.sequenceNumber(),
+				streamRecord.keys(), decode(streamRecord.newImage()), decode(streamRecord.oldImage()));
+		for (DDBStreamListener<T> listener : listeners)
+			listener.onChange(event);
+	}
+
+	private T decode(Map<String, AttributeValue> image) throws Exception {
+		if (image == null || image.isEmpty())
+			return null;
+		T entity = entityClass.newInstance();
+		DDBMapper.populateEntity(entity, image);
+		return entity;
+	}
+
+	private void recordFailure(Exception e) {
+		failures.incrementAndGet();
+		lastFailure = e;
+	}
+
+	private ExecutorService newWorkers() {
+		return Executors.newFixedThreadPool(parallelism, daemonThreads("ddb-stream-shard"));
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		final AtomicLong counter = new AtomicLong();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private static class ShardState {
+
+		final String shardId;
+
+		final String parentShardId;
+
+		// only touched by the worker reading the shard
+		volatile String iterator;
+
+		volatile boolean finished;
+
+		// the record failing to be delivered and its failed attempts so far
+		String failingSequenceNumber;
+
+		int failedAttempts;
+
+		ShardState(String shardId, String parentShardId) {
+			this.shardId = shardId;
+			this.parentShardId = parentShardId;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.freebird.repository.stream;
+
+import software.amazon.awssdk.services.dynamodb.model.Record;
+
+/**
+ * Receives the stream records {@link DDBStreamConsumer} gives up on, e.g. to
+ * park them in a dead-letter queue.
+ */
+public interface DDBStreamFailureHandler {
+
+	/**
+	 * Called once a record failed the consumer's maximum number of attempts,
+	 * just before it is skipped and checkpointed past. Throwing keeps the record
+	 * in place, so it is tried again on the next poll.
+	 *
+	 * @param record  the raw record; decoding may be what failed
+	 * @param failure the last listener or decode failure
+	 */
+	void onSkippedRecord(String streamArn, String shardId, Record record, Exception failure) throws Exception;
+}
@@ -0,0 +1,11 @@
+package com.freebird.repository.stream;
+
+/**
+ * Receives the changes of a stream, in order within each shard. Delivery is at
+ * least once: when a listener throws, the record and the rest of its shard are
+ * delivered again on the next poll.
+ */
+public interface DDBStreamListener<T> {
+
+	void onChange(DDBChangeEvent<T> event) throws Exception;
+}
@@ -0,0 +1,22 @@
+package com.freebird.repository.stream;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checkpoints kept in memory only; a restarted consumer reads every shard from
+ * the oldest record again.
+ */
+public class InMemoryCheckpointStore implements DDBCheckpointStore {
+
+	private final ConcurrentHashMap<String, String> checkpoints = new ConcurrentHashMap<String, String>();
+
+	@Override
+	public String getCheckpoint(String streamArn, String shardId) {
+		return checkpoints.get(streamArn + "|" + shardId);
+	}
+
+	@Override
+	public void checkpoint(String streamArn, String shardId, String sequenceNumber) {
+		checkpoints.put(streamArn + "|" + shardId, sequenceNumber);
+	}
+}
@@ -0,0 +1,172 @@
+package com.freebird.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.freebird.repository.hotkey.HotKeyDetector;
+import com.freebird.repository.simulator.SimulatorConfig;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+public class DynamoCRUDRepositoryTest {
+
+	@Test
+	public void batchHelpersRetryUnprocessedKeys() throws Exception {
+		OrderRepository repository = OrderRepository.inMemory(new SimulatorConfig().setUnprocessedProbability(0.1));
+
+		List<WriteRequest> writes = new ArrayList<WriteRequest>();
+		for (int i = 0; i < 120; i++)
+			writes.add(WriteRequest.builder().putRequest(PutRequest.builder().item(key(i)).build()).build());
+		repository.batchWritePer25Item("orders", writes);
+
+		List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>();
+		for (int i = 0; i < 120; i++)
+			keys.add(key(i));
+		List<Map<String, AttributeValue>> items = repository.batchGetPer100Item("orders", keys);
+
+		Set<Map<String, AttributeValue>> distinct = new HashSet<Map<String, AttributeValue>>(items);
+		assertEquals(120, distinct.size());
+		assertTrue(repository.getSimulator().getUnprocessedRequestCount() > 0);
+	}
+
+	@Test
+	public void batchGetFailsWhenKeysStayUnprocessed() throws Exception {
+		OrderRepository repository = OrderRepository.inMemory(new SimulatorConfig());
+		repository.saveItem(new OrderItem("c1", "o1"));
+		repository.getSimulator().setConfig(new SimulatorConfig().setUnprocessedProbability(1));
+
+		List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>();
+		keys.add(key(1));
+		try {
+			repository.batchGetPer100Item("orders", keys);
+			fail("expected BatchUnprocessedException");
+		} catch (BatchUnprocessedException e) {
+			assertEquals("orders", e.getTableName());
+			assertEquals(1, e.getUnprocessedCount());
+		}
+	}
+
+	@Test
+	public void queryByRangeKeyMatchesRangeKeyPrefixWithinHashKey() throws Exception {
+		OrderRepository repository = OrderRepository.inMemory(new SimulatorConfig());
+		for (String order : new String[] { "2018-01-a", "2018-01-b", "2018-02-a" })
+			repository.saveItem(new OrderItem("c1", order));
+		repository.saveItem(new OrderItem("c2", "2018-01-c"));
+
+		List<OrderItem> january = repository.queryByRangeKey(new OrderItem("c1", "2018-01"));
+		assertEquals(2, january.size());
+		assertEquals("2018-01-a", january.get(0).getOrder());
+		assertEquals("2018-01-b", january.get(1).getOrder());
+		assertEquals("c1", january.get(1).getCustomer());
+		assertTrue(repository.queryByRangeKey(new OrderItem("c3", "2018")).isEmpty());
+	}
+
+	@Test
+	public void scanAndCountApplyCriteriaOnEveryPage() throws Exception {
+		OrderRepository repository = OrderRepository.inMemory(new SimulatorConfig().setPageSize(3));
+		for (int i = 0; i < 10; i++) {
+			OrderItem item = new OrderItem("c" + (i % 4), "o" + i);
+			item.setStatus(i % 3 == 0 ? "open" : "shipped");
+			item.setAmount((long) i);
+			repository.saveItem(item);
+		}
+
+		List<OrderItem> open = repository.scan(repository.criteria().eq("status", "open"));
+		Set<String> orders = new HashSet<String>();
+		for (OrderItem item : open)
+			orders.add(item.getOrder());
+		assertEquals(new HashSet<String>(Arrays.asList("o0", "o3", "o6", "o9")), orders);
+		assertEquals(4, repository.count(repository.criteria().eq("status", "open")));
+		assertEquals(3, repository.count(repository.criteria().eq("status", "shipped").ge("amount", 5)));
+		assertEquals(10, repository.count(repository.criteria()));
+		assertEquals(10, repository.scan(repository.criteria()).size());
+	}
+
+	@Test
+	public void rangeKeyQueriesCountAndFilterAcrossPages() throws Exception {
+		OrderRepository repository = OrderRepository.inMemory(new SimulatorConfig().setPageSize(2));
+		for (int i = 0; i < 7; i++) {
+			OrderItem item = new OrderItem("c1", "2018-01-" + i);
+			item.setNote(i % 2 == 0 ? "gift" : "plain");
+			repository.saveItem(item);
+		}
+		repository.saveItem(new OrderItem("c1", "2018-02-0"));
+		repository.saveItem(new OrderItem("c2", "2018-01-0"));
+
+		OrderItem january = new OrderItem("c1", "2018-01");
+		assertEquals(7, repository.queryByRangeKey(january).size());
+		assertEquals(7, repository.countByRangeKey(january));
+		assertEquals(4, repository.countByRangeKey(january, repository.criteria().eq("note", "gift")));
+
+		List<OrderItem> gifts = repository.queryByRangeKey(january, repository.criteria().eq("note", "gift"));
+		assertEquals(4, gifts.size());
+		assertEquals("2018-01-0", gifts.get(0).getOrder());
+		assertEquals("2018-01-6", gifts.get(3).getOrder());
+		for (OrderItem gift : gifts)
+			assertEquals("gift", gift.getNote());
+	}
+
+	@Test
+	public void criteriaAndQueryDefaultToTheDeclaredEntity() throws Exception {
+		OrderRepository repository = OrderRepository.inMemory(new SimulatorConfig());
+		assertEquals(OrderItem.class, repository.criteria().getEntityClass());
+		assertEquals("byStatus", repository.query().hashKey("status", "open").resolveIndex().getIndexName());
+		try {
+			new AuditedRepository<OrderItem>().criteria();
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(AuditedRepository.class.getName()));
+		}
+	}
+
+	@Test
+	public void entityClassIsResolvedThroughGenericBases() {
+		assertEquals(OrderItem.class, DynamoCRUDRepository.entityClass(OrderRepository.class));
+		assertEquals(OrderItem.class, DynamoCRUDRepository.entityClass(AuditedOrderRepository.class));
+		assertEquals(OrderItem.class, DynamoCRUDRepository.entityClass(new OrderRepository() {
+		}.getClass()));
+		assertNull(DynamoCRUDRepository.entityClass(AuditedRepository.class));
+	}
+
+	@Test
+	public void batchRequestsAreSampledForIndirectSubclasses() throws Exception {
+		AuditedOrderRepository repository = new AuditedOrderRepository();
+		repository.setDynamoDbClient(OrderRepository.inMemory(new SimulatorConfig()).getDynamoDbClient());
+		HotKeyDetector detector = new HotKeyDetector(1.0);
+		repository.setHotKeyDetector(detector);
+
+		List<WriteRequest> writes = new ArrayList<WriteRequest>();
+		for (int i = 0; i < 30; i++)
+			writes.add(WriteRequest.builder().putRequest(PutRequest.builder().item(key(i)).build()).build());
+		repository.batchWritePer25Item("orders", writes);
+
+		assertEquals(30, detector.getSampledCount("orders", "BatchWriteItem"));
+	}
+
+	static class AuditedRepository<E> extends DynamoCRUDRepository<E> {
+	}
+
+	static class AuditedOrderRepository extends AuditedRepository<OrderItem> {
+	}
+
+	private static Map<String, AttributeValue> key(int i) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("customerId", AttributeValue.builder().s("c" + (i % 7)).build());
+		key.put("orderId", AttributeValue.builder().s("o" + i).build());
+		return key;
+	}
+}
@@ -0,0 +1,89 @@
+package com.freebird.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.freebird.repository.ddbmapper.DDBIndexMeta;
+import com.freebird.repository.ddbmapper.DDBModelException;
+import com.freebird.repository.simulator.SimulatorConfig;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+public class DynamoCriteriaTest {
+
+	@Test
+	public void rendersPlaceholdersAfterExistingOnes() throws Exception {
+		Map<String, String> names = new HashMap<String, String>();
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		String expression = new DynamoCriteria<OrderItem>(OrderItem.class).eq("status", "open")
+				.between("amount", 10, 20).in("note", "a", "b").attributeExists("meta.color")
+				.toFilterExpression(names, values);
+
+		assertEquals("#f0 = :f0 AND #f1 BETWEEN :f1 AND :f2 AND #f2 IN (:f3, :f4) AND attribute_exists(#f3.#f4)",
+				expression);
+		assertEquals("orderStatus", names.get("#f0"));
+		assertEquals("amount", names.get("#f1"));
+		assertEquals("meta", names.get("#f3"));
+		assertEquals("color", names.get("#f4"));
+		assertEquals("10", values.get(":f1").n());
+		assertEquals("b", values.get(":f4").s());
+	}
+
+	@Test
+	public void rendersAnyOfAsGroupedAlternatives() throws Exception {
+		DynamoCriteria<OrderItem> criteria = new DynamoCriteria<OrderItem>(OrderItem.class).anyOf(
+				new DynamoCriteria<OrderItem>(OrderItem.class).eq("note", "x").contains("tags", "y"),
+				new DynamoCriteria<OrderItem>(OrderItem.class).attributeNotExists("note"));
+		assertEquals("((#f0 = :f0 AND contains(#f1, :f1)) OR (attribute_not_exists(#f2)))",
+				criteria.toFilterExpression(new HashMap<String, String>(), new HashMap<String, AttributeValue>()));
+
+		List<DynamoCriteria<OrderItem>> alternatives = new ArrayList<DynamoCriteria<OrderItem>>();
+		alternatives.add(new DynamoCriteria<OrderItem>(OrderItem.class).eq("note", "x"));
+		alternatives.add(new DynamoCriteria<OrderItem>(OrderItem.class).eq("note", "y"));
+		DynamoCriteria<OrderItem> fromList = new DynamoCriteria<OrderItem>(OrderItem.class).anyOf(alternatives);
+		alternatives.clear();
+		assertEquals("((#f0 = :f0) OR (#f1 = :f1))",
+				fromList.toFilterExpression(new HashMap<String, String>(), new HashMap<String, AttributeValue>()));
+	}
+
+	@Test
+	public void emptyCriteriaRendersNoExpression() throws Exception {
+		assertNull(new DynamoCriteria<OrderItem>(OrderItem.class).toFilterExpression(new HashMap<String, String>(),
+				new HashMap<String, AttributeValue>()));
+	}
+
+	@Test(expected = DDBModelException.class)
+	public void unknownAttributeIsRejected() throws Exception {
+		new DynamoCriteria<OrderItem>(OrderItem.class).eq("missing", "x").toFilterExpression(
+				new HashMap<String, String>(), new HashMap<String, AttributeValue>());
+	}
+
+	@Test
+	public void filterPlaceholdersDoNotClashWithKeyConditions() throws Exception {
+		OrderRepository repository = OrderRepository.inMemory(new SimulatorConfig());
+		DynamoQueryBuilder<OrderItem> query = repository.query(OrderItem.class).hashKey("customer", "c1")
+				.rangeKeyBetween("order", "o1", "o5")
+				.filter(repository.criteria(OrderItem.class).eq("note", "n").gt("meta.size", 3));
+		DDBIndexMeta index = query.resolveIndex();
+		QueryRequest request = query.buildRequest("orders", index).build();
+
+		assertEquals("#hk = :hk and #rk between :rk and :rk2", request.keyConditionExpression());
+		assertEquals("#f2 = :f3 AND #f3.#f4 > :f4", request.filterExpression());
+		assertEquals(5, request.expressionAttributeNames().size());
+		assertEquals(5, request.expressionAttributeValues().size());
+		assertEquals("customerId", request.expressionAttributeNames().get("#hk"));
+		assertEquals("orderId", request.expressionAttributeNames().get("#rk"));
+		assertEquals("o5", request.expressionAttributeValues().get(":rk2").s());
+		assertEquals("note", request.expressionAttributeNames().get("#f2"));
+		assertEquals("n", request.expressionAttributeValues().get(":f3").s());
+		assertEquals("3", request.expressionAttributeValues().get(":f4").n());
+	}
+}
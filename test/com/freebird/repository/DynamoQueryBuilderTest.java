@@ -0,0 +1,247 @@
+package com.freebird.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.freebird.repository.ddbmapper.DDBIndexMeta;
+import com.freebird.repository.ddbmapper.DDBMapper;
+import com.freebird.repository.ddbmapper.DDBModelException;
+import com.freebird.repository.ddbmapper.annotation.DDBAttr;
+import com.freebird.repository.ddbmapper.annotation.DDBHashKey;
+import com.freebird.repository.ddbmapper.annotation.DDBIndexHashKey;
+import com.freebird.repository.ddbmapper.annotation.DDBIndexRangeKey;
+import com.freebird.repository.ddbmapper.annotation.DDBTable;
+import com.freebird.repository.simulator.SimulatorConfig;
+
+public class DynamoQueryBuilderTest {
+
+	private OrderRepository repository;
+
+	@Before
+	public void setUp() throws Exception {
+		repository = OrderRepository.inMemory(new SimulatorConfig());
+		for (int i = 0; i < 6; i++) {
+			OrderItem item = new OrderItem("c" + (i % 2), "o" + i);
+			item.setStatus(i < 3 ? "open" : "shipped");
+			item.setAmount((long) (i * 10));
+			item.setNote("note " + i);
+			item.setRegion(i % 3 == 0 ? "eu" : "us");
+			repository.saveItem(item);
+		}
+	}
+
+	@Test
+	public void selectsTableLocalAndGlobalIndexByKeys() throws Exception {
+		assertNull(repository.query(OrderItem.class).hashKey("customer", "c0").resolveIndex().getIndexName());
+		assertNull(repository.query(OrderItem.class).hashKey("customerId", "c0").rangeKey("order",
+				DynamoQueryBuilder.OP.EQ, "o0").resolveIndex().getIndexName());
+		assertEquals("byAmount", repository.query(OrderItem.class).hashKey("customer", "c0")
+				.rangeKey("amount", DynamoQueryBuilder.OP.GT, 0).resolveIndex().getIndexName());
+		assertEquals("byStatus", repository.query(OrderItem.class).hashKey("status", "open").resolveIndex()
+				.getIndexName());
+		assertEquals("byStatus", repository.query(OrderItem.class).index("byStatus").hashKey("orderStatus", "open")
+				.rangeKey("amount", DynamoQueryBuilder.OP.GE, 0).resolveIndex().getIndexName());
+	}
+
+	@Test(expected = DDBModelException.class)
+	public void unknownKeyCombinationIsRejected() throws Exception {
+		repository.query(OrderItem.class).index("byAmount").hashKey("status", "open").resolveIndex();
+	}
+
+	@Test
+	public void keysOnlyIndexQueryFetchesFullItemsInIndexOrder() throws Exception {
+		DynamoQueryResult<OrderItem> result = repository.query(OrderItem.class).hashKey("status", "shipped")
+				.scanIndexForward(false).execute();
+
+		assertEquals("byStatus", result.getIndexName());
+		assertTrue(result.isFetchedFullItems());
+		assertEquals(3, result.getItems().size());
+		assertEquals("o5", result.getItems().get(0).getOrder());
+		assertEquals("o4", result.getItems().get(1).getOrder());
+		assertEquals("o3", result.getItems().get(2).getOrder());
+		assertEquals("note 5", result.getItems().get(0).getNote());
+	}
+
+	@Test
+	public void keysOnlyIndexQueryWithoutFetchReturnsProjectedKeys() throws Exception {
+		DynamoQueryResult<OrderItem> result = repository.query(OrderItem.class).hashKey("status", "open")
+				.fetchFullItems(false).limit(2).execute();
+
+		assertFalse(result.isFetchedFullItems());
+		assertEquals(2, result.getItems().size());
+		assertEquals("o0", result.getItems().get(0).getOrder());
+		assertEquals(Long.valueOf(0), result.getItems().get(0).getAmount());
+		assertNull(result.getItems().get(0).getNote());
+		assertNotNull(result.getLastEvaluatedKey());
+	}
+
+	@Test
+	public void localIndexQueryAppliesRangeConditionAndFilter() throws Exception {
+		DynamoQueryResult<OrderItem> result = repository.query(OrderItem.class).hashKey("customer", "c1")
+				.rangeKey("amount", DynamoQueryBuilder.OP.GE, 30)
+				.filter(repository.criteria(OrderItem.class).ne("note", "note 3")).execute();
+
+		assertEquals("byAmount", result.getIndexName());
+		assertFalse(result.isFetchedFullItems());
+		assertEquals(1, result.getItems().size());
+		assertEquals("o5", result.getItems().get(0).getOrder());
+	}
+
+	@Test
+	public void countsFilteredTableAndIndexItems() throws Exception {
+		DynamoQueryBuilder<OrderItem> query = repository.query(OrderItem.class).hashKey("customer", "c0")
+				.filter(repository.criteria(OrderItem.class).in("note", "note 0", "note 4"));
+		assertEquals(2, query.count());
+		assertEquals(3, repository.query(OrderItem.class).hashKey("status", "open").count());
+	}
+
+	@Test
+	public void filterOnTableKeyIsRejected() throws Exception {
+		expectRejected(repository.query(OrderItem.class).hashKey("customer", "c0")
+				.filter(repository.criteria(OrderItem.class).beginsWith("orderId", "o")), "orderId");
+		expectRejected(repository.query(OrderItem.class).hashKey("customerId", "c0")
+				.filter(repository.criteria(OrderItem.class)
+						.anyOf(repository.criteria(OrderItem.class).eq("note", "x"),
+								repository.criteria(OrderItem.class).eq("customer", "c0"))),
+				"customerId");
+	}
+
+	@Test
+	public void filterOnIndexKeyIsRejected() throws Exception {
+		expectRejected(repository.query(OrderItem.class).index("byAmount").hashKey("customer", "c0")
+				.filter(repository.criteria(OrderItem.class).gt("amount", 0)), "amount");
+	}
+
+	@Test
+	public void filterOnAttributeMissingFromKeysOnlyIndexIsRejected() throws Exception {
+		expectRejected(repository.query(OrderItem.class).hashKey("status", "open")
+				.filter(repository.criteria(OrderItem.class).eq("note", "note 1")), "note");
+	}
+
+	@Test
+	public void keysOnlyIndexCanFilterTableKeys() throws Exception {
+		DynamoQueryResult<OrderItem> result = repository.query(OrderItem.class).hashKey("status", "open")
+				.filter(repository.criteria(OrderItem.class).eq("customer", "c0")).execute();
+		assertEquals(2, result.getItems().size());
+		for (OrderItem item : result.getItems())
+			assertEquals("c0", item.getCustomer());
+	}
+
+	@Test
+	public void includeIndexFiltersProjectedAttributesAndFetchesByDefault() throws Exception {
+		DynamoQueryResult<OrderItem> result = repository.query(OrderItem.class).hashKey("region", "us")
+				.filter(repository.criteria(OrderItem.class).gt("amount", 20)).execute();
+
+		assertEquals("byRegion", result.getIndexName());
+		assertTrue(result.isFetchedFullItems());
+		assertEquals(2, result.getItems().size());
+		for (OrderItem item : result.getItems()) {
+			assertTrue(item.getAmount() > 20);
+			assertEquals("shipped", item.getStatus());
+		}
+	}
+
+	@Test
+	public void includeIndexQueryWithoutFetchReturnsProjectedAttributes() throws Exception {
+		DynamoQueryResult<OrderItem> result = repository.query(OrderItem.class).hashKey("region", "eu")
+				.filter(repository.criteria(OrderItem.class).eq("note", "note 3")).fetchFullItems(false).execute();
+
+		assertFalse(result.isFetchedFullItems());
+		assertEquals(1, result.getItems().size());
+		OrderItem item = result.getItems().get(0);
+		assertEquals("o3", item.getOrder());
+		assertEquals("note 3", item.getNote());
+		assertEquals(Long.valueOf(30), item.getAmount());
+		assertNull(item.getStatus());
+	}
+
+	@Test
+	public void filterOnAttributeMissingFromIncludeIndexIsRejected() throws Exception {
+		expectRejected(repository.query(OrderItem.class).hashKey("region", "eu")
+				.filter(repository.criteria(OrderItem.class).eq("status", "open")), "orderStatus");
+	}
+
+	@Test
+	public void includeIndexProjectingEveryAttributeIsNotFetched() throws Exception {
+		DDBIndexMeta byCustomer = index(CoveredItem.class, "byCustomer");
+		assertTrue(byCustomer.isProjected("total"));
+		assertTrue(byCustomer.isAllAttributesProjected());
+		assertFalse(index(OrderItem.class, "byRegion").isAllAttributesProjected());
+	}
+
+	@Test
+	public void nonKeyAttributesNeedAnIncludeProjection() throws Exception {
+		for (Class<?> entityClass : new Class<?>[] { IncludeWithoutAttributesItem.class,
+				KeysOnlyWithAttributesItem.class }) {
+			try {
+				DDBMapper.extractKeySchemas(entityClass);
+				fail("expected DDBModelException for " + entityClass.getSimpleName());
+			} catch (DDBModelException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("nonKeyAttributes"));
+			}
+		}
+	}
+
+	private static DDBIndexMeta index(Class<?> entityClass, String indexName) throws DDBModelException {
+		for (DDBIndexMeta index : DDBMapper.extractKeySchemas(entityClass)) {
+			if (indexName.equals(index.getIndexName()))
+				return index;
+		}
+		throw new AssertionError("no index " + indexName);
+	}
+
+	private static void expectRejected(DynamoQueryBuilder<OrderItem> query, String attributeName) throws Exception {
+		try {
+			query.execute();
+			fail("expected DDBModelException for " + attributeName);
+		} catch (DDBModelException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(attributeName + " "));
+		}
+	}
+
+	@DDBTable(name = "covered")
+	public static class CoveredItem {
+
+		@DDBHashKey(name = "orderId")
+		private String order;
+
+		@DDBAttr(name = "customerId")
+		@DDBIndexHashKey(globalSecondaryIndexNames = "byCustomer", projection = DDBIndexRangeKey.PROJECTION.INCLUDE, nonKeyAttributes = "total")
+		private String customer;
+
+		@DDBAttr(name = "total")
+		private Long total;
+	}
+
+	@DDBTable(name = "invalid")
+	public static class IncludeWithoutAttributesItem {
+
+		@DDBHashKey(name = "orderId")
+		private String order;
+
+		@DDBAttr(name = "customerId")
+		@DDBIndexHashKey(globalSecondaryIndexNames = "byCustomer", projection = DDBIndexRangeKey.PROJECTION.INCLUDE)
+		private String customer;
+	}
+
+	@DDBTable(name = "invalid")
+	public static class KeysOnlyWithAttributesItem {
+
+		@DDBHashKey(name = "orderId")
+		private String order;
+
+		@DDBAttr(name = "customerId")
+		@DDBIndexHashKey(globalSecondaryIndexNames = "byCustomer", projection = DDBIndexRangeKey.PROJECTION.KEYS_ONLY, nonKeyAttributes = "total")
+		private String customer;
+
+		@DDBAttr(name = "total")
+		private Long total;
+	}
+}
@@ -0,0 +1,119 @@
+package com.freebird.repository;
+
+import java.util.List;
+import java.util.Map;
+
+import com.freebird.repository.ddbmapper.annotation.DDBAttr;
+import com.freebird.repository.ddbmapper.annotation.DDBHashKey;
+import com.freebird.repository.ddbmapper.annotation.DDBIndexHashKey;
+import com.freebird.repository.ddbmapper.annotation.DDBIndexRangeKey;
+import com.freebird.repository.ddbmapper.annotation.DDBRangeKey;
+import com.freebird.repository.ddbmapper.annotation.DDBTable;
+
+/**
+ * Test entity with a KEYS_ONLY global index (byStatus), an INCLUDE global index
+ * (byRegion, projecting note and amount) and a local index (byAmount).
+ */
+@DDBTable(name = "orders")
+public class OrderItem {
+
+	@DDBHashKey(name = "customerId")
+	private String customer;
+
+	@DDBRangeKey(name = "orderId")
+	private String order;
+
+	@DDBAttr(name = "orderStatus")
+	@DDBIndexHashKey(globalSecondaryIndexNames = "byStatus", projection = DDBIndexRangeKey.PROJECTION.KEYS_ONLY)
+	private String status;
+
+	@DDBAttr(name = "amount")
+	@DDBIndexRangeKey(globalSecondaryIndexNames = "byStatus", localSecondaryIndexNames = "byAmount")
+	private Long amount;
+
+	@DDBAttr(name = "note")
+	private String note;
+
+	@DDBAttr(name = "tags")
+	private List<String> tags;
+
+	@DDBAttr(name = "meta")
+	private Map<String, String> meta;
+
+	@DDBAttr(name = "region")
+	@DDBIndexHashKey(globalSecondaryIndexNames = "byRegion", projection = DDBIndexRangeKey.PROJECTION.INCLUDE, nonKeyAttributes = {
+			"note", "amount" })
+	private String region;
+
+	public OrderItem() {
+	}
+
+	public OrderItem(String customer, String order) {
+		this.customer = customer;
+		this.order = order;
+	}
+
+	public String getCustomer() {
+		return customer;
+	}
+
+	public void setCustomer(String customer) {
+		this.customer = customer;
+	}
+
+	public String getOrder() {
+		return order;
+	}
+
+	public void setOrder(String order) {
+		this.order = order;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public Long getAmount() {
+		return amount;
+	}
+
+	public void setAmount(Long amount) {
+		this.amount = amount;
+	}
+
+	public String getNote() {
+		return note;
+	}
+
+	public void setNote(String note) {
+		this.note = note;
+	}
+
+	public List<String> getTags() {
+		return tags;
+	}
+
+	public void setTags(List<String> tags) {
+		this.tags = tags;
+	}
+
+	public Map<String, String> getMeta() {
+		return meta;
+	}
+
+	public void setMeta(Map<String, String> meta) {
+		this.meta = meta;
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public void setRegion(String region) {
+		this.region = region;
+	}
+}
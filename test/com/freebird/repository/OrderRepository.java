@@ -0,0 +1,26 @@
+package com.freebird.repository;
+
+import com.freebird.repository.simulator.InMemoryDynamoDbClient;
+import com.freebird.repository.simulator.SimulatorConfig;
+
+public class OrderRepository extends DynamoCRUDRepository<OrderItem> {
+
+	/**
+	 * Repository over a simulator with the tables and indexes of
+	 * {@link OrderItem}.
+	 */
+	public static OrderRepository inMemory(SimulatorConfig config) {
+		InMemoryDynamoDbClient ddb = new InMemoryDynamoDbClient(config);
+		ddb.createTable("orders", "customerId", "orderId");
+		ddb.createIndex("orders", "byStatus", "orderStatus", "amount", true);
+		ddb.createIndex("orders", "byAmount", "customerId", "amount", false);
+		ddb.createIndex("orders", "byRegion", "region", null, "note", "amount");
+		OrderRepository repository = new OrderRepository();
+		repository.setDynamoDbClient(ddb);
+		return repository;
+	}
+
+	public InMemoryDynamoDbClient getSimulator() {
+		return (InMemoryDynamoDbClient) getDynamoDbClient();
+	}
+}
@@ -0,0 +1,144 @@
+package com.freebird.repository.ddbmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.freebird.repository.OrderItem;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+public class LazyAttributeCollectionsTest {
+
+	private OrderItem order;
+
+	@Before
+	public void setUp() throws Exception {
+		Map<String, AttributeValue> meta = new HashMap<String, AttributeValue>();
+		meta.put("color", s("red"));
+		meta.put("size", s("L"));
+		meta.put("shape", s("round"));
+
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("customerId", s("c1"));
+		item.put("orderId", s("o1"));
+		item.put("tags", AttributeValue.builder().l(Arrays.asList(s("a"), s("b"), s("c"))).build());
+		item.put("meta", AttributeValue.builder().m(meta).build());
+
+		order = new OrderItem();
+		DDBMapper.populateEntity(order, item, true);
+		assertTrue((Object) order.getMeta() instanceof LazyAttributeMap);
+		assertTrue((Object) order.getTags() instanceof LazyAttributeList);
+	}
+
+	@Test
+	public void entrySetWritesThrough() {
+		Map<String, String> meta = order.getMeta();
+		for (Map.Entry<String, String> entry : meta.entrySet()) {
+			if (entry.getKey().equals("color"))
+				assertEquals("red", entry.setValue("blue"));
+		}
+		meta.replaceAll((key, value) -> value.toUpperCase());
+
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("color", "BLUE");
+		expected.put("size", "L");
+		expected.put("shape", "ROUND");
+		assertEquals(expected, meta);
+	}
+
+	@Test
+	public void viewsRemoveThrough() {
+		Map<String, String> meta = order.getMeta();
+		Iterator<Map.Entry<String, String>> entries = meta.entrySet().iterator();
+		while (entries.hasNext()) {
+			if (entries.next().getKey().equals("size"))
+				entries.remove();
+		}
+		assertTrue(meta.keySet().remove("shape"));
+		assertFalse(meta.keySet().removeIf(key -> key.equals("missing")));
+
+		assertEquals(1, meta.size());
+		assertEquals("red", meta.get("color"));
+	}
+
+	@Test
+	public void serializesAsPlainCollections() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(order.getTags());
+		out.writeObject(order.getMeta());
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		List<?> tags = (List<?>) in.readObject();
+		Map<?, ?> meta = (Map<?, ?>) in.readObject();
+
+		assertSame(ArrayList.class, tags.getClass());
+		assertSame(HashMap.class, meta.getClass());
+		assertEquals(order.getTags(), tags);
+		assertEquals(order.getMeta(), meta);
+	}
+
+	@Test
+	public void convertsEachValueOnlyWhenReadAndAtMostOnce() throws Exception {
+		List<AttributeValue> tags = new ArrayList<AttributeValue>();
+		Map<String, AttributeValue> meta = new HashMap<String, AttributeValue>();
+		for (int i = 0; i < 1000; i++) {
+			tags.add(s("tag" + i));
+			meta.put("key" + i, s("value" + i));
+		}
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put("customerId", s("c1"));
+		item.put("orderId", s("o1"));
+		item.put("tags", AttributeValue.builder().l(tags).build());
+		item.put("meta", AttributeValue.builder().m(meta).build());
+		OrderItem large = new OrderItem();
+		DDBMapper.populateEntity(large, item, true);
+		LazyAttributeList list = (LazyAttributeList) (Object) large.getTags();
+		LazyAttributeMap map = (LazyAttributeMap) (Object) large.getMeta();
+
+		// size and key lookups need no conversion
+		assertEquals(1000, list.size());
+		assertTrue(map.containsKey("key7"));
+		assertEquals(0, list.getConversionCount());
+		assertEquals(0, map.getConversionCount());
+
+		assertEquals("tag7", list.get(7));
+		assertEquals("tag7", list.get(7));
+		assertEquals("value7", map.get("key7"));
+		assertEquals("value7", map.get("key7"));
+		assertEquals(1, list.getConversionCount());
+		assertEquals(1, map.getConversionCount());
+
+		// a full pass and the copy made on the first write reuse converted values
+		for (Object tag : list)
+			assertTrue(((String) tag).startsWith("tag"));
+		for (Map.Entry<String, Object> entry : map.entrySet())
+			assertTrue(((String) entry.getValue()).startsWith("value"));
+		list.add("extra");
+		map.put("extra", "value");
+		assertEquals("tag999", list.get(999));
+		assertEquals(1000, list.getConversionCount());
+		assertEquals(1000, map.getConversionCount());
+	}
+
+	private static AttributeValue s(String value) {
+		return AttributeValue.builder().s(value).build();
+	}
+}
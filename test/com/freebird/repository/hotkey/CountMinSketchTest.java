@@ -0,0 +1,73 @@
+package com.freebird.repository.hotkey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class CountMinSketchTest {
+
+	@Test
+	public void sparseSketchCountsExactly() {
+		CountMinSketch sketch = new CountMinSketch(4, 2048);
+		for (int i = 0; i < 100; i++)
+			sketch.add("k" + i, i + 1);
+		for (int i = 0; i < 100; i++)
+			assertEquals(i + 1, sketch.estimate("k" + i));
+		assertEquals(5050, sketch.getTotalCount());
+		assertEquals(0, sketch.noiseFloor());
+	}
+
+	@Test
+	public void crowdedSketchNeverUndercountsAndKeepsHotKeysClose() {
+		CountMinSketch sketch = new CountMinSketch(4, 1024);
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 50000; i++)
+				sketch.add("k" + i, 1);
+		}
+		sketch.add("hot", 20000);
+
+		long floor = sketch.noiseFloor();
+		assertTrue("floor " + floor, floor > 0 && floor < 2 * sketch.getTotalCount() / sketch.getWidth());
+		for (int i = 0; i < 50000; i += 97)
+			assertTrue(sketch.estimate("k" + i) >= 3);
+		long hot = sketch.estimate("hot");
+		assertTrue("hot " + hot, hot >= 20000 && hot - floor <= 20000 + floor);
+	}
+
+	@Test
+	public void concurrentAddsAreNotLost() throws Exception {
+		final CountMinSketch sketch = new CountMinSketch(4, 64);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		List<Future<?>> adds = new ArrayList<Future<?>>();
+		for (int t = 0; t < 8; t++) {
+			adds.add(threads.submit(() -> {
+				for (int i = 0; i < 10000; i++)
+					sketch.add("hot", 1);
+			}));
+		}
+		for (Future<?> add : adds)
+			add.get();
+		threads.shutdown();
+
+		assertEquals(80000, sketch.estimate("hot"));
+		assertEquals(80000, sketch.getTotalCount());
+	}
+
+	@Test
+	public void decayHalvesCounts() {
+		CountMinSketch sketch = new CountMinSketch(4, 256);
+		sketch.add("a", 10);
+		sketch.decay();
+		assertEquals(5, sketch.estimate("a"));
+		assertEquals(5, sketch.getTotalCount());
+		sketch.clear();
+		assertEquals(0, sketch.estimate("a"));
+	}
+}
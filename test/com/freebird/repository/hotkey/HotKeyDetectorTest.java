@@ -0,0 +1,97 @@
+package com.freebird.repository.hotkey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+public class HotKeyDetectorTest {
+
+	@Test
+	public void uniformTrafficHasNoHotKeysAndSkewOne() {
+		for (int keys : new int[] { 10000, 100000, 1000000 }) {
+			HotKeyDetector detector = new HotKeyDetector();
+			recordUniform(detector, keys, 3);
+			assertTrue("keys " + keys, detector.getHotKeys("orders", "GetItem", 5).isEmpty());
+			assertEquals("keys " + keys, 1.0, detector.getSkewRatio("orders", "GetItem"), 0.0);
+		}
+	}
+
+	@Test
+	public void fewUniformKeysReportTheirCountsAndLowSkew() {
+		HotKeyDetector detector = new HotKeyDetector();
+		recordUniform(detector, 1000, 3);
+		double skew = detector.getSkewRatio("orders", "GetItem");
+		assertTrue("skew " + skew, skew >= 1 && skew <= 2.2);
+		for (HotKey hotKey : detector.getHotKeys("orders", "GetItem", 32))
+			assertTrue(hotKey.toString(), hotKey.getEstimatedCount() <= 6);
+	}
+
+	@Test
+	public void hotKeyIsReportedWithItsCountAndShare() {
+		HotKeyDetector detector = new HotKeyDetector();
+		recordUniform(detector, 100000, 3);
+		for (int i = 0; i < 100000; i++)
+			detector.record("orders", "GetItem", AttributeValue.builder().s("hot").build());
+		detector.record("orders", "Query", "other");
+
+		List<HotKey> hotKeys = detector.getHotKeys("orders", "GetItem", 5);
+		assertEquals(1, hotKeys.size());
+		assertEquals("hot", hotKeys.get(0).getKey());
+		assertEquals(100000, hotKeys.get(0).getEstimatedCount(), 1000);
+		assertEquals(0.25, hotKeys.get(0).getShare(), 0.01);
+
+		// 100k accesses against a mean of 3 per key over about 100k keys
+		double skew = detector.getSkewRatio("orders", "GetItem");
+		assertTrue("skew " + skew, skew > 20000 && skew < 30000);
+		assertEquals(skew, detector.getMaxSkewRatio(), 0.0);
+		assertEquals(2, detector.getTrackedOperations().size());
+	}
+
+	@Test
+	public void topKeysAreOrderedAndScaledBySampleRate() {
+		HotKeyDetector detector = new HotKeyDetector(1.0);
+		for (int i = 0; i < 300; i++)
+			detector.record("orders", "GetItem", "a");
+		for (int i = 0; i < 200; i++)
+			detector.record("orders", "GetItem", "b");
+		for (int i = 0; i < 100; i++)
+			detector.record("orders", "GetItem", "c");
+
+		List<HotKey> hotKeys = detector.getHotKeys("orders", "GetItem", 2);
+		assertEquals(2, hotKeys.size());
+		assertEquals("a", hotKeys.get(0).getKey());
+		assertEquals(300, hotKeys.get(0).getEstimatedCount());
+		assertEquals("b", hotKeys.get(1).getKey());
+
+		HotKeyDetector sampled = new HotKeyDetector(0.5);
+		for (int i = 0; i < 20000; i++)
+			sampled.record("orders", "GetItem", "a");
+		assertEquals(20000, sampled.getHotKeys("orders", "GetItem", 1).get(0).getEstimatedCount(), 1000);
+	}
+
+	@Test
+	public void decayHalvesAndResetClears() {
+		HotKeyDetector detector = new HotKeyDetector();
+		for (int i = 0; i < 100; i++)
+			detector.record("orders", "GetItem", "a");
+		detector.decay();
+		assertEquals(50, detector.getHotKeys("orders", "GetItem", 1).get(0).getEstimatedCount());
+		assertEquals(50, detector.getSampledCount("orders", "GetItem"));
+
+		detector.reset();
+		assertTrue(detector.getHotKeys("orders", "GetItem", 1).isEmpty());
+		assertEquals(0, detector.getSkewRatio("orders", "GetItem"), 0.0);
+	}
+
+	private static void recordUniform(HotKeyDetector detector, int keys, int times) {
+		for (int round = 0; round < times; round++) {
+			for (int i = 0; i < keys; i++)
+				detector.record("orders", "GetItem", "k" + i);
+		}
+	}
+}
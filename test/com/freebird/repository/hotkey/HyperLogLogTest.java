@@ -0,0 +1,39 @@
+package com.freebird.repository.hotkey;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+	@Test
+	public void estimatesDistinctKeysWithinFewPercent() {
+		for (int keys : new int[] { 100, 10000, 1000000 }) {
+			HyperLogLog distinct = new HyperLogLog();
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < keys; i++)
+					distinct.add("k" + i);
+			}
+			assertEquals("keys " + keys, keys, distinct.estimate(), keys * 0.05);
+		}
+	}
+
+	@Test
+	public void unionCountsSharedKeysOnce() {
+		HyperLogLog a = new HyperLogLog();
+		HyperLogLog b = new HyperLogLog();
+		for (int i = 0; i < 20000; i++)
+			a.add("k" + i);
+		for (int i = 10000; i < 30000; i++)
+			b.add("k" + i);
+		assertEquals(30000, a.estimateUnion(b), 30000 * 0.05);
+
+		a.clear();
+		assertEquals(0, a.estimate());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unionNeedsSamePrecision() {
+		new HyperLogLog(10).estimateUnion(new HyperLogLog(12));
+	}
+}
@@ -0,0 +1,79 @@
+package com.freebird.repository.simulator;
+
+import java.util.List;
+import java.util.Map;
+
+import com.freebird.repository.ddbmapper.annotation.DDBAttr;
+import com.freebird.repository.ddbmapper.annotation.DDBHashKey;
+import com.freebird.repository.ddbmapper.annotation.DDBRangeKey;
+import com.freebird.repository.ddbmapper.annotation.DDBTable;
+
+@DDBTable(name = "benchmark")
+public class BenchmarkItem {
+
+	@DDBHashKey(name = "pk")
+	private String pk;
+
+	@DDBRangeKey(name = "typeRange", required = true)
+	private String typeRange;
+
+	@DDBAttr(name = "payload")
+	private String payload;
+
+	@DDBAttr(name = "counter")
+	private Long counter;
+
+	@DDBAttr(name = "history")
+	private List<String> history;
+
+	@DDBAttr(name = "attributes")
+	private Map<String, String> attributes;
+
+	public String getPk() {
+		return pk;
+	}
+
+	public void setPk(String pk) {
+		this.pk = pk;
+	}
+
+	public String getTypeRange() {
+		return typeRange;
+	}
+
+	public void setTypeRange(String typeRange) {
+		this.typeRange = typeRange;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	public void setPayload(String payload) {
+		this.payload = payload;
+	}
+
+	public Long getCounter() {
+		return counter;
+	}
+
+	public void setCounter(Long counter) {
+		this.counter = counter;
+	}
+
+	public List<String> getHistory() {
+		return history;
+	}
+
+	public void setHistory(List<String> history) {
+		this.history = history;
+	}
+
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	public void setAttributes(Map<String, String> attributes) {
+		this.attributes = attributes;
+	}
+}
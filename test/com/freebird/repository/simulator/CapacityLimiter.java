@@ -0,0 +1,50 @@
+package com.freebird.repository.simulator;
+
+/**
+ * Token bucket holding at most one second of provisioned capacity. A rate of
+ * zero or less means unlimited.
+ */
+class CapacityLimiter {
+
+	private final double unitsPerSecond;
+
+	private double available;
+
+	private long lastRefillNanos;
+
+	CapacityLimiter(double unitsPerSecond) {
+		this.unitsPerSecond = unitsPerSecond;
+		this.available = unitsPerSecond;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	synchronized boolean tryAcquire(int units) {
+		if (unitsPerSecond <= 0)
+			return true;
+
+		refill();
+		if (available < units)
+			return false;
+		available -= units;
+		return true;
+	}
+
+	/**
+	 * Debits capacity that was already used, e.g. the items read by a query after
+	 * its first unit was admitted. The bucket may go negative, throttling the
+	 * following calls until it refills.
+	 */
+	synchronized void consume(int units) {
+		if (unitsPerSecond <= 0)
+			return;
+
+		refill();
+		available -= units;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		available = Math.min(unitsPerSecond, available + (now - lastRefillNanos) * unitsPerSecond / 1_000_000_000d);
+		lastRefillNanos = now;
+	}
+}
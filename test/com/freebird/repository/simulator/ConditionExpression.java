@@ -0,0 +1,363 @@
+package com.freebird.repository.simulator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+/**
+ * Parses and evaluates the subset of the DynamoDB condition expression grammar
+ * used by key conditions and filters: comparators, BETWEEN, IN, AND/OR/NOT,
+ * parentheses and the functions begins_with, contains, attribute_exists and
+ * attribute_not_exists.
+ */
+class ConditionExpression {
+
+	private final Node root;
+
+	private final List<String> attributeNames;
+
+	private final Map<String, AttributeValue> equalities;
+
+	private ConditionExpression(Node root, List<String> attributeNames, Map<String, AttributeValue> equalities) {
+		this.root = root;
+		this.attributeNames = attributeNames;
+		this.equalities = equalities;
+	}
+
+	static ConditionExpression parse(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+		Parser parser = new Parser(tokenize(expression), names == null ? Collections.<String, String>emptyMap() : names,
+				values == null ? Collections.<String, AttributeValue>emptyMap() : values);
+		List<String> referenced = new ArrayList<String>();
+		Node root = parser.parseOr(referenced);
+		if (parser.hasNext())
+			throw validation("Unexpected token '" + parser.peek() + "' in expression: " + expression);
+		return new ConditionExpression(root, referenced, parser.equalities);
+	}
+
+	boolean matches(Map<String, AttributeValue> item) {
+		return root.test(item);
+	}
+
+	/**
+	 * Resolved (top-level) attribute names referenced by the expression.
+	 */
+	List<String> getAttributeNames() {
+		return attributeNames;
+	}
+
+	/**
+	 * Value of an {@code attribute = :value} comparison in the expression. Only
+	 * meaningful for key conditions, which cannot contain OR or NOT.
+	 */
+	AttributeValue getEqualityValue(String attributeName) {
+		return equalities.get(attributeName);
+	}
+
+	static int compare(AttributeValue a, AttributeValue b) {
+		if (a.n() != null && b.n() != null)
+			return new BigDecimal(a.n()).compareTo(new BigDecimal(b.n()));
+		if (a.s() != null && b.s() != null)
+			return a.s().compareTo(b.s());
+		throw validation("Cannot compare attribute values of different types.");
+	}
+
+	static boolean sameType(AttributeValue a, AttributeValue b) {
+		return (a.n() != null && b.n() != null) || (a.s() != null && b.s() != null);
+	}
+
+	static DynamoDbException validation(String message) {
+		return (DynamoDbException) DynamoDbException.builder().message(message).statusCode(400).build();
+	}
+
+	private interface Node {
+		boolean test(Map<String, AttributeValue> item);
+	}
+
+	private interface Operand {
+		AttributeValue resolve(Map<String, AttributeValue> item);
+	}
+
+	private static List<String> tokenize(String expression) {
+		List<String> tokens = new ArrayList<String>();
+		int i = 0;
+		while (i < expression.length()) {
+			char c = expression.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '(' || c == ')' || c == ',' || c == '=') {
+				tokens.add(String.valueOf(c));
+				i++;
+			} else if (c == '<' || c == '>') {
+				if (i + 1 < expression.length() && (expression.charAt(i + 1) == '=' || (c == '<' && expression.charAt(i + 1) == '>'))) {
+					tokens.add(expression.substring(i, i + 2));
+					i += 2;
+				} else {
+					tokens.add(String.valueOf(c));
+					i++;
+				}
+			} else {
+				int start = i;
+				while (i < expression.length() && isWordChar(expression.charAt(i)))
+					i++;
+				if (start == i)
+					throw validation("Unexpected character '" + c + "' in expression: " + expression);
+				tokens.add(expression.substring(start, i));
+			}
+		}
+		return tokens;
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '#' || c == ':' || c == '.' || c == '-';
+	}
+
+	private static class Parser {
+
+		private final List<String> tokens;
+
+		private final Map<String, String> names;
+
+		private final Map<String, AttributeValue> values;
+
+		private final Map<String, AttributeValue> equalities = new HashMap<String, AttributeValue>();
+
+		private int pos;
+
+		Parser(List<String> tokens, Map<String, String> names, Map<String, AttributeValue> values) {
+			this.tokens = tokens;
+			this.names = names;
+			this.values = values;
+		}
+
+		boolean hasNext() {
+			return pos < tokens.size();
+		}
+
+		String peek() {
+			return hasNext() ? tokens.get(pos) : null;
+		}
+
+		private boolean peekKeyword(String keyword) {
+			return hasNext() && tokens.get(pos).equalsIgnoreCase(keyword);
+		}
+
+		private String next() {
+			if (!hasNext())
+				throw validation("Unexpected end of expression.");
+			return tokens.get(pos++);
+		}
+
+		private void expect(String token) {
+			String actual = next();
+			if (!actual.equalsIgnoreCase(token))
+				throw validation("Expected '" + token + "' but found '" + actual + "'.");
+		}
+
+		Node parseOr(List<String> referenced) {
+			Node left = parseAnd(referenced);
+			while (peekKeyword("OR")) {
+				next();
+				final Node l = left;
+				final Node r = parseAnd(referenced);
+				left = item -> l.test(item) || r.test(item);
+			}
+			return left;
+		}
+
+		private Node parseAnd(List<String> referenced) {
+			Node left = parseNot(referenced);
+			while (peekKeyword("AND")) {
+				next();
+				final Node l = left;
+				final Node r = parseNot(referenced);
+				left = item -> l.test(item) && r.test(item);
+			}
+			return left;
+		}
+
+		private Node parseNot(List<String> referenced) {
+			if (peekKeyword("NOT")) {
+				next();
+				final Node inner = parseNot(referenced);
+				return item -> !inner.test(item);
+			}
+			return parsePrimary(referenced);
+		}
+
+		private Node parsePrimary(List<String> referenced) {
+			if ("(".equals(peek())) {
+				next();
+				Node inner = parseOr(referenced);
+				expect(")");
+				return inner;
+			}
+
+			String word = next();
+			if ("(".equals(peek()))
+				return parseFunction(word, referenced);
+
+			final Operand left = operand(word, referenced);
+			String op = next();
+			if (op.equalsIgnoreCase("BETWEEN")) {
+				final Operand low = operand(next(), referenced);
+				expect("AND");
+				final Operand high = operand(next(), referenced);
+				return item -> {
+					AttributeValue v = left.resolve(item);
+					AttributeValue lo = low.resolve(item);
+					AttributeValue hi = high.resolve(item);
+					return v != null && lo != null && hi != null && sameType(v, lo) && sameType(v, hi)
+							&& compare(v, lo) >= 0 && compare(v, hi) <= 0;
+				};
+			}
+			if (op.equalsIgnoreCase("IN")) {
+				expect("(");
+				final List<Operand> candidates = new ArrayList<Operand>();
+				candidates.add(operand(next(), referenced));
+				while (",".equals(peek())) {
+					next();
+					candidates.add(operand(next(), referenced));
+				}
+				expect(")");
+				return item -> {
+					AttributeValue v = left.resolve(item);
+					if (v == null)
+						return false;
+					for (Operand candidate : candidates) {
+						AttributeValue c = candidate.resolve(item);
+						if (c != null && equal(v, c))
+							return true;
+					}
+					return false;
+				};
+			}
+
+			String rightToken = next();
+			final Operand right = operand(rightToken, referenced);
+			final String comparator = op;
+			if ("=".equals(comparator) && rightToken.startsWith(":") && !word.contains("."))
+				equalities.put(word.startsWith("#") ? names.get(word) : word, values.get(rightToken));
+			return item -> {
+				AttributeValue a = left.resolve(item);
+				AttributeValue b = right.resolve(item);
+				if (a == null || b == null)
+					return false;
+				switch (comparator) {
+					case "=":
+						return equal(a, b);
+					case "<>":
+						return !equal(a, b);
+					case "<":
+						return sameType(a, b) && compare(a, b) < 0;
+					case "<=":
+						return sameType(a, b) && compare(a, b) <= 0;
+					case ">":
+						return sameType(a, b) && compare(a, b) > 0;
+					case ">=":
+						return sameType(a, b) && compare(a, b) >= 0;
+					default:
+						throw validation("Unsupported comparator: " + comparator);
+				}
+			};
+		}
+
+		private Node parseFunction(String function, List<String> referenced) {
+			expect("(");
+			final Operand path = operand(next(), referenced);
+			final Operand argument;
+			if (",".equals(peek())) {
+				next();
+				argument = operand(next(), referenced);
+			} else {
+				argument = null;
+			}
+			expect(")");
+
+			switch (function.toLowerCase()) {
+				case "attribute_exists":
+					return item -> path.resolve(item) != null;
+				case "attribute_not_exists":
+					return item -> path.resolve(item) == null;
+				case "begins_with":
+					requireArgument(function, argument);
+					return item -> {
+						AttributeValue v = path.resolve(item);
+						AttributeValue prefix = argument.resolve(item);
+						return v != null && prefix != null && v.s() != null && prefix.s() != null
+								&& v.s().startsWith(prefix.s());
+					};
+				case "contains":
+					requireArgument(function, argument);
+					return item -> contains(path.resolve(item), argument.resolve(item));
+				default:
+					throw validation("Unsupported function: " + function);
+			}
+		}
+
+		private void requireArgument(String function, Operand argument) {
+			if (argument == null)
+				throw validation(function + " requires two operands.");
+		}
+
+		private Operand operand(String token, List<String> referenced) {
+			if (token.startsWith(":")) {
+				final AttributeValue value = values.get(token);
+				if (value == null)
+					throw validation("Value provided in ExpressionAttributeValues unused or missing: " + token);
+				return item -> value;
+			}
+
+			String[] segments = token.split("\\.");
+			final String[] path = new String[segments.length];
+			for (int i = 0; i < segments.length; i++) {
+				if (segments[i].startsWith("#")) {
+					path[i] = names.get(segments[i]);
+					if (path[i] == null)
+						throw validation("Name provided in ExpressionAttributeNames unused or missing: " + segments[i]);
+				} else {
+					path[i] = segments[i];
+				}
+			}
+			referenced.add(path[0]);
+			return item -> {
+				AttributeValue current = item.get(path[0]);
+				for (int i = 1; i < path.length && current != null; i++)
+					current = current.m().get(path[i]);
+				return current;
+			};
+		}
+	}
+
+	private static boolean equal(AttributeValue a, AttributeValue b) {
+		if (a.n() != null && b.n() != null)
+			return compare(a, b) == 0;
+		return a.equals(b);
+	}
+
+	private static boolean contains(AttributeValue v, AttributeValue operand) {
+		if (v == null || operand == null)
+			return false;
+		if (v.s() != null && operand.s() != null)
+			return v.s().contains(operand.s());
+		if (operand.s() != null && !v.ss().isEmpty())
+			return v.ss().contains(operand.s());
+		if (operand.n() != null && !v.ns().isEmpty()) {
+			for (String n : v.ns())
+				if (new BigDecimal(n).compareTo(new BigDecimal(operand.n())) == 0)
+					return true;
+			return false;
+		}
+		if (!v.l().isEmpty()) {
+			for (AttributeValue element : v.l())
+				if (element != null && equal(element, operand))
+					return true;
+		}
+		return false;
+	}
+}
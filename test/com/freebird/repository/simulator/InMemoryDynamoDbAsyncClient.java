@@ -0,0 +1,134 @@
+package com.freebird.repository.simulator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+/**
+ * {@link DynamoDbAsyncClient} view of an {@link InMemoryDynamoDbClient}; both
+ * share the same tables, config and counters. Latency does not block a thread:
+ * each call is scheduled to run after its simulated latency and completes its
+ * future then, exceptionally when the simulator throws (e.g. throttling).
+ */
+public class InMemoryDynamoDbAsyncClient implements DynamoDbAsyncClient {
+
+	private final InMemoryDynamoDbClient delegate;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final boolean ownsScheduler;
+
+	public InMemoryDynamoDbAsyncClient(InMemoryDynamoDbClient delegate) {
+		this(delegate, Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "in-memory-dynamodb-async");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Runs the calls on the given scheduler, which is left running on close.
+	 */
+	public InMemoryDynamoDbAsyncClient(InMemoryDynamoDbClient delegate, ScheduledExecutorService scheduler) {
+		this(delegate, scheduler, false);
+	}
+
+	private InMemoryDynamoDbAsyncClient(InMemoryDynamoDbClient delegate, ScheduledExecutorService scheduler,
+			boolean ownsScheduler) {
+		this.delegate = delegate;
+		this.scheduler = scheduler;
+		this.ownsScheduler = ownsScheduler;
+	}
+
+	public InMemoryDynamoDbClient getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public String serviceName() {
+		return SERVICE_NAME;
+	}
+
+	@Override
+	public void close() {
+		if (ownsScheduler)
+			scheduler.shutdown();
+	}
+
+	@Override
+	public CompletableFuture<GetItemResponse> getItem(GetItemRequest getItemRequest) {
+		return schedule(() -> delegate.doGetItem(getItemRequest));
+	}
+
+	@Override
+	public CompletableFuture<PutItemResponse> putItem(PutItemRequest putItemRequest) {
+		return schedule(() -> delegate.doPutItem(putItemRequest));
+	}
+
+	@Override
+	public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest updateItemRequest) {
+		return schedule(() -> delegate.doUpdateItem(updateItemRequest));
+	}
+
+	@Override
+	public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest deleteItemRequest) {
+		return schedule(() -> delegate.doDeleteItem(deleteItemRequest));
+	}
+
+	@Override
+	public CompletableFuture<QueryResponse> query(QueryRequest queryRequest) {
+		return schedule(() -> delegate.doQuery(queryRequest));
+	}
+
+	@Override
+	public CompletableFuture<ScanResponse> scan(ScanRequest scanRequest) {
+		return schedule(() -> delegate.doScan(scanRequest));
+	}
+
+	@Override
+	public CompletableFuture<BatchGetItemResponse> batchGetItem(BatchGetItemRequest batchGetItemRequest) {
+		return schedule(() -> delegate.doBatchGetItem(batchGetItemRequest));
+	}
+
+	@Override
+	public CompletableFuture<BatchWriteItemResponse> batchWriteItem(BatchWriteItemRequest batchWriteItemRequest) {
+		return schedule(() -> delegate.doBatchWriteItem(batchWriteItemRequest));
+	}
+
+	private <R> CompletableFuture<R> schedule(Supplier<R> call) {
+		CompletableFuture<R> future = new CompletableFuture<R>();
+		try {
+			scheduler.schedule(() -> {
+				try {
+					future.complete(call.get());
+				} catch (RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			}, delegate.nextLatencyMillis(), TimeUnit.MILLISECONDS);
+		} catch (RuntimeException e) {
+			// rejected after close
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+}
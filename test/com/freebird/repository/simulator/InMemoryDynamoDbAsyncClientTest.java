@@ -0,0 +1,106 @@
+package com.freebird.repository.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+
+public class InMemoryDynamoDbAsyncClientTest {
+
+	private InMemoryDynamoDbClient ddb;
+
+	private InMemoryDynamoDbAsyncClient async;
+
+	@Before
+	public void setUp() {
+		ddb = new InMemoryDynamoDbClient();
+		ddb.createTable("orders", "pk", "sk");
+		async = new InMemoryDynamoDbAsyncClient(ddb);
+	}
+
+	@After
+	public void tearDown() {
+		async.close();
+	}
+
+	@Test
+	public void sharesTablesWithTheSyncClient() throws Exception {
+		for (int i = 0; i < 4; i++)
+			async.putItem(PutItemRequest.builder().tableName("orders").item(key("c0", "o" + i)).build()).get();
+
+		assertEquals(key("c0", "o2"),
+				ddb.getItem(GetItemRequest.builder().tableName("orders").key(key("c0", "o2")).build()).item());
+		assertEquals(4, async.scan(ScanRequest.builder().tableName("orders").build()).get().items().size());
+		assertEquals(Integer.valueOf(4),
+				async.scan(ScanRequest.builder().tableName("orders").select(Select.COUNT).build()).get().count());
+	}
+
+	@Test
+	public void latencyDoesNotHoldAThreadPerCall() throws Exception {
+		ddb.setConfig(new SimulatorConfig().setLatencyMillis(100));
+		ddb.putItem(PutItemRequest.builder().tableName("orders").item(key("c0", "o0")).build());
+
+		// one scheduler thread; sleeping per call would take 50 x 100 ms
+		long begin = System.nanoTime();
+		List<CompletableFuture<GetItemResponse>> gets = new ArrayList<CompletableFuture<GetItemResponse>>();
+		for (int i = 0; i < 50; i++)
+			gets.add(async.getItem(GetItemRequest.builder().tableName("orders").key(key("c0", "o0")).build()));
+		assertTrue(gets.get(0).getNow(null) == null);
+		for (CompletableFuture<GetItemResponse> get : gets)
+			assertEquals(key("c0", "o0"), get.get().item());
+		long millis = (System.nanoTime() - begin) / 1_000_000;
+		assertTrue("elapsed " + millis, millis >= 100 && millis < 2000);
+	}
+
+	@Test
+	public void throttlingCompletesTheFutureExceptionally() throws Exception {
+		ddb.setConfig(new SimulatorConfig().setReadCapacityUnits(1));
+		ddb.createTable("limited", "pk", "sk");
+		GetItemRequest get = GetItemRequest.builder().tableName("limited").key(key("c0", "o0")).build();
+
+		async.getItem(get).get();
+		try {
+			async.getItem(get).get();
+			fail("expected ProvisionedThroughputExceededException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), e.getCause() instanceof ProvisionedThroughputExceededException);
+		}
+		assertEquals(1, ddb.getThrottledRequestCount());
+	}
+
+	@Test
+	public void callsAfterCloseFail() throws Exception {
+		async.close();
+		try {
+			async.getItem(GetItemRequest.builder().tableName("orders").key(key("c0", "o0")).build()).get();
+			fail("expected the call to be rejected");
+		} catch (ExecutionException e) {
+			// rejected by the stopped scheduler
+		}
+	}
+
+	private static Map<String, AttributeValue> key(String pk, String sk) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("pk", AttributeValue.builder().s(pk).build());
+		key.put("sk", AttributeValue.builder().s(sk).build());
+		return key;
+	}
+}
@@ -0,0 +1,535 @@
+package com.freebird.repository.simulator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.awssdk.services.dynamodb.model.StreamViewType;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * In-process {@link DynamoDbClient} for load tests. Supports the operations used
+ * by {@code DynamoCRUDRepository} and injects per-call latency, throttling
+ * against provisioned capacity ({@link ProvisionedThroughputExceededException})
+ * and random UnprocessedKeys/UnprocessedItems as configured by
+ * {@link SimulatorConfig}. Operations that are not simulated throw
+ * {@link UnsupportedOperationException}.
+ */
+public class InMemoryDynamoDbClient implements DynamoDbClient {
+
+	private static final int BATCH_GET_LIMIT = 100;
+
+	private static final int BATCH_WRITE_LIMIT = 25;
+
+	private final ConcurrentHashMap<String, SimulatedTable> tables = new ConcurrentHashMap<String, SimulatedTable>();
+
+	private final ConcurrentHashMap<String, SimulatedStream> streams = new ConcurrentHashMap<String, SimulatedStream>();
+
+	private volatile SimulatorConfig config;
+
+	private final AtomicLong throttledRequests = new AtomicLong();
+
+	private final AtomicLong unprocessedRequests = new AtomicLong();
+
+	public InMemoryDynamoDbClient() {
+		this(new SimulatorConfig());
+	}
+
+	public InMemoryDynamoDbClient(SimulatorConfig config) {
+		this.config = config;
+	}
+
+	public SimulatorConfig getConfig() {
+		return config;
+	}
+
+	public void setConfig(SimulatorConfig config) {
+		this.config = config;
+	}
+
+	/**
+	 * Creates (or replaces) a table with the given key schema. rangeKeyName may be
+	 * null for hash-only tables.
+	 */
+	public void createTable(String tableName, String hashKeyName, String rangeKeyName) {
+		tables.put(tableName, new SimulatedTable(tableName, hashKeyName, rangeKeyName, config));
+	}
+
+	/**
+	 * Adds a secondary index to a created table. A keysOnly index returns only
+	 * the table and index key attributes.
+	 */
+	public void createIndex(String tableName, String indexName, String hashKeyName, String rangeKeyName,
+			boolean keysOnly) {
+		table(tableName).addIndex(indexName, hashKeyName, rangeKeyName,
+				keysOnly ? Collections.<String>emptySet() : null);
+	}
+
+	/**
+	 * Adds an INCLUDE index to a created table, returning the keys and the given
+	 * non-key attributes.
+	 */
+	public void createIndex(String tableName, String indexName, String hashKeyName, String rangeKeyName,
+			String... nonKeyAttributes) {
+		table(tableName).addIndex(indexName, hashKeyName, rangeKeyName,
+				new HashSet<String>(Arrays.asList(nonKeyAttributes)));
+	}
+
+	/**
+	 * Enables a stream on a created table and returns its ARN. Writes are then
+	 * recorded into shardCount shards and can be read with
+	 * {@link InMemoryDynamoDbStreamsClient}.
+	 */
+	public String enableStream(String tableName, StreamViewType viewType, int shardCount) {
+		SimulatedTable table = table(tableName);
+		String streamArn = "arn:aws:dynamodb:local:000000000000:table/" + tableName + "/stream/"
+				+ Instant.now().toString();
+		SimulatedStream stream = new SimulatedStream(streamArn, table, viewType, shardCount);
+		table.setStream(stream);
+		streams.put(streamArn, stream);
+		return streamArn;
+	}
+
+	/**
+	 * Closes the open shards of the stream and opens child shards in their place.
+	 */
+	public void rollShards(String streamArn) {
+		stream(streamArn).rollShards();
+	}
+
+	/**
+	 * Removes the closed shards from the stream, as if their retention expired.
+	 */
+	public void trimClosedShards(String streamArn) {
+		stream(streamArn).trimClosedShards();
+	}
+
+	SimulatedStream stream(String streamArn) {
+		SimulatedStream stream = streamArn == null ? null : streams.get(streamArn);
+		if (stream == null)
+			throw ResourceNotFoundException.builder().message("Requested resource not found: Stream: " + streamArn
+					+ " not found").statusCode(400).build();
+		return stream;
+	}
+
+	/**
+	 * Calls rejected with ProvisionedThroughputExceededException so far.
+	 */
+	public long getThrottledRequestCount() {
+		return throttledRequests.get();
+	}
+
+	/**
+	 * Batch keys and write requests returned as unprocessed so far.
+	 */
+	public long getUnprocessedRequestCount() {
+		return unprocessedRequests.get();
+	}
+
+	@Override
+	public String serviceName() {
+		return SERVICE_NAME;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public GetItemResponse getItem(GetItemRequest getItemRequest) {
+		simulateLatency();
+		return doGetItem(getItemRequest);
+	}
+
+	GetItemResponse doGetItem(GetItemRequest getItemRequest) {
+		SimulatedTable table = table(getItemRequest.tableName());
+		acquire(table.getReadCapacity(), 1);
+
+		Map<String, AttributeValue> item = table.get(getItemRequest.key());
+		GetItemResponse.Builder response = GetItemResponse.builder();
+		if (item != null)
+			response.item(item);
+		return response.build();
+	}
+
+	@Override
+	public PutItemResponse putItem(PutItemRequest putItemRequest) {
+		simulateLatency();
+		return doPutItem(putItemRequest);
+	}
+
+	PutItemResponse doPutItem(PutItemRequest putItemRequest) {
+		SimulatedTable table = table(putItemRequest.tableName());
+		acquire(table.getWriteCapacity(), 1);
+
+		table.put(putItemRequest.item());
+		return PutItemResponse.builder().build();
+	}
+
+	@Override
+	public UpdateItemResponse updateItem(UpdateItemRequest updateItemRequest) {
+		simulateLatency();
+		return doUpdateItem(updateItemRequest);
+	}
+
+	UpdateItemResponse doUpdateItem(UpdateItemRequest updateItemRequest) {
+		SimulatedTable table = table(updateItemRequest.tableName());
+		if (updateItemRequest.updateExpression() != null)
+			throw new UnsupportedOperationException("UpdateExpression is not simulated, use AttributeUpdates.");
+		acquire(table.getWriteCapacity(), 1);
+
+		table.update(updateItemRequest.key(), updateItemRequest.attributeUpdates());
+		return UpdateItemResponse.builder().build();
+	}
+
+	@Override
+	public DeleteItemResponse deleteItem(DeleteItemRequest deleteItemRequest) {
+		simulateLatency();
+		return doDeleteItem(deleteItemRequest);
+	}
+
+	DeleteItemResponse doDeleteItem(DeleteItemRequest deleteItemRequest) {
+		SimulatedTable table = table(deleteItemRequest.tableName());
+		acquire(table.getWriteCapacity(), 1);
+
+		table.delete(deleteItemRequest.key());
+		return DeleteItemResponse.builder().build();
+	}
+
+	@Override
+	public QueryResponse query(QueryRequest queryRequest) {
+		simulateLatency();
+		return doQuery(queryRequest);
+	}
+
+	QueryResponse doQuery(QueryRequest queryRequest) {
+		SimulatedTable table = table(queryRequest.tableName());
+		acquire(table.getReadCapacity(), 1);
+
+		Map<String, String> names = queryRequest.expressionAttributeNames();
+		Map<String, AttributeValue> values = queryRequest.expressionAttributeValues();
+		if (queryRequest.keyConditionExpression() == null)
+			throw ConditionExpression.validation("KeyConditionExpression is required.");
+		ConditionExpression keyCondition = ConditionExpression.parse(queryRequest.keyConditionExpression(), names, values);
+
+		SimulatedTable schema = queryRequest.indexName() == null ? table : table.getIndex(queryRequest.indexName());
+		final String hashKeyName = schema.getHashKeyName();
+		final String rangeKeyName = schema.getRangeKeyName();
+		AttributeValue hashKeyValue = keyCondition.getEqualityValue(hashKeyName);
+		if (hashKeyValue == null)
+			throw ConditionExpression.validation("Query condition missed key schema element: " + hashKeyName);
+		if (queryRequest.filterExpression() != null) {
+			for (String name : ConditionExpression.parse(queryRequest.filterExpression(), names, values)
+					.getAttributeNames()) {
+				if (name.equals(hashKeyName) || name.equals(rangeKeyName))
+					throw ConditionExpression.validation(
+							"Filter Expression can only contain non-primary key attributes: Primary key attribute: " + name);
+			}
+		}
+
+		List<Map<String, AttributeValue>> matched = new ArrayList<Map<String, AttributeValue>>();
+		for (Map<String, AttributeValue> item : schema == table ? table.snapshot(hashKeyValue) : table.snapshot()) {
+			if ((rangeKeyName == null || item.get(rangeKeyName) != null) && keyCondition.matches(item))
+				matched.add(schema == table ? item : project(item, table, schema));
+		}
+		Comparator<Map<String, AttributeValue>> order = keyOrder(table, schema);
+		if (Boolean.FALSE.equals(queryRequest.scanIndexForward()))
+			order = order.reversed();
+		Collections.sort(matched, order);
+
+		int from = startIndex(matched, queryRequest.exclusiveStartKey(), order);
+		int to = (int) Math.min(matched.size(), (long) from + pageSize(queryRequest.limit()));
+		List<Map<String, AttributeValue>> page = matched.subList(from, to);
+		table.getReadCapacity().consume(Math.max(0, page.size() - 1));
+
+		List<Map<String, AttributeValue>> items = filter(page, queryRequest.filterExpression(), names, values);
+
+		QueryResponse.Builder response = QueryResponse.builder().count(items.size()).scannedCount(page.size());
+		if (queryRequest.select() != Select.COUNT)
+			response.items(items);
+		if (to < matched.size() && to > from)
+			response.lastEvaluatedKey(lastEvaluatedKey(matched.get(to - 1), table, schema));
+		return response.build();
+	}
+
+	@Override
+	public ScanResponse scan(ScanRequest scanRequest) {
+		simulateLatency();
+		return doScan(scanRequest);
+	}
+
+	ScanResponse doScan(ScanRequest scanRequest) {
+		SimulatedTable table = table(scanRequest.tableName());
+		acquire(table.getReadCapacity(), 1);
+		if (scanRequest.totalSegments() != null)
+			throw new UnsupportedOperationException("Parallel scan is not simulated.");
+
+		// an index holds only the items that have its key attributes
+		SimulatedTable schema = scanRequest.indexName() == null ? table : table.getIndex(scanRequest.indexName());
+		List<Map<String, AttributeValue>> scanned = new ArrayList<Map<String, AttributeValue>>();
+		for (Map<String, AttributeValue> item : table.snapshot()) {
+			if (item.get(schema.getHashKeyName()) != null
+					&& (schema.getRangeKeyName() == null || item.get(schema.getRangeKeyName()) != null))
+				scanned.add(schema == table ? item : project(item, table, schema));
+		}
+
+		Comparator<Map<String, AttributeValue>> order = keyOrder(table, schema);
+		Collections.sort(scanned, order);
+
+		int from = startIndex(scanned, scanRequest.exclusiveStartKey(), order);
+		int to = (int) Math.min(scanned.size(), (long) from + pageSize(scanRequest.limit()));
+		List<Map<String, AttributeValue>> page = scanned.subList(from, to);
+		table.getReadCapacity().consume(Math.max(0, page.size() - 1));
+
+		List<Map<String, AttributeValue>> items = filter(page, scanRequest.filterExpression(),
+				scanRequest.expressionAttributeNames(), scanRequest.expressionAttributeValues());
+
+		ScanResponse.Builder response = ScanResponse.builder().count(items.size()).scannedCount(page.size());
+		if (scanRequest.select() != Select.COUNT)
+			response.items(items);
+		if (to < scanned.size() && to > from)
+			response.lastEvaluatedKey(lastEvaluatedKey(scanned.get(to - 1), table, schema));
+		return response.build();
+	}
+
+	@Override
+	public BatchGetItemResponse batchGetItem(BatchGetItemRequest batchGetItemRequest) {
+		simulateLatency();
+		return doBatchGetItem(batchGetItemRequest);
+	}
+
+	BatchGetItemResponse doBatchGetItem(BatchGetItemRequest batchGetItemRequest) {
+		int requested = 0;
+		for (KeysAndAttributes keysAndAttributes : batchGetItemRequest.requestItems().values())
+			requested += keysAndAttributes.keys().size();
+		if (requested > BATCH_GET_LIMIT)
+			throw ConditionExpression.validation("Too many items requested for the BatchGetItem call: " + requested);
+
+		Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<String, List<Map<String, AttributeValue>>>();
+		Map<String, KeysAndAttributes> unprocessedKeys = new HashMap<String, KeysAndAttributes>();
+		int processed = 0;
+		int throttled = 0;
+		for (Entry<String, KeysAndAttributes> request : batchGetItemRequest.requestItems().entrySet()) {
+			SimulatedTable table = table(request.getKey());
+			List<Map<String, AttributeValue>> found = new ArrayList<Map<String, AttributeValue>>();
+			List<Map<String, AttributeValue>> skipped = new ArrayList<Map<String, AttributeValue>>();
+			for (Map<String, AttributeValue> key : request.getValue().keys()) {
+				if (injectUnprocessed()) {
+					skipped.add(key);
+				} else if (!table.getReadCapacity().tryAcquire(1)) {
+					skipped.add(key);
+					throttled++;
+				} else {
+					processed++;
+					Map<String, AttributeValue> item = table.get(key);
+					if (item != null)
+						found.add(item);
+				}
+			}
+			responses.put(request.getKey(), found);
+			if (!skipped.isEmpty())
+				unprocessedKeys.put(request.getKey(), request.getValue().toBuilder().keys(skipped).build());
+		}
+
+		if (processed == 0 && throttled > 0)
+			throw throttle("Throughput exceeds the current capacity of your table for every requested key");
+		unprocessedRequests.addAndGet(requested - processed);
+		return BatchGetItemResponse.builder().responses(responses).unprocessedKeys(unprocessedKeys).build();
+	}
+
+	@Override
+	public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest batchWriteItemRequest) {
+		simulateLatency();
+		return doBatchWriteItem(batchWriteItemRequest);
+	}
+
+	BatchWriteItemResponse doBatchWriteItem(BatchWriteItemRequest batchWriteItemRequest) {
+		int requested = 0;
+		for (List<WriteRequest> writeRequests : batchWriteItemRequest.requestItems().values())
+			requested += writeRequests.size();
+		if (requested > BATCH_WRITE_LIMIT)
+			throw ConditionExpression.validation("Too many items requested for the BatchWriteItem call: " + requested);
+
+		Map<String, List<WriteRequest>> unprocessedItems = new HashMap<String, List<WriteRequest>>();
+		int processed = 0;
+		int throttled = 0;
+		for (Entry<String, List<WriteRequest>> request : batchWriteItemRequest.requestItems().entrySet()) {
+			SimulatedTable table = table(request.getKey());
+			List<WriteRequest> skipped = new ArrayList<WriteRequest>();
+			for (WriteRequest writeRequest : request.getValue()) {
+				if (injectUnprocessed()) {
+					skipped.add(writeRequest);
+				} else if (!table.getWriteCapacity().tryAcquire(1)) {
+					skipped.add(writeRequest);
+					throttled++;
+				} else {
+					processed++;
+					if (writeRequest.putRequest() != null)
+						table.put(writeRequest.putRequest().item());
+					else if (writeRequest.deleteRequest() != null)
+						table.delete(writeRequest.deleteRequest().key());
+				}
+			}
+			if (!skipped.isEmpty())
+				unprocessedItems.put(request.getKey(), skipped);
+		}
+
+		if (processed == 0 && throttled > 0)
+			throw throttle("Throughput exceeds the current capacity of your table for every write request");
+		unprocessedRequests.addAndGet(requested - processed);
+		return BatchWriteItemResponse.builder().unprocessedItems(unprocessedItems).build();
+	}
+
+	SimulatedTable table(String tableName) {
+		SimulatedTable table = tableName == null ? null : tables.get(tableName);
+		if (table == null)
+			throw ResourceNotFoundException.builder().message("Requested resource not found: Table: " + tableName
+					+ " not found").statusCode(400).build();
+		return table;
+	}
+
+	void simulateLatency() {
+		long millis = nextLatencyMillis();
+		if (millis <= 0)
+			return;
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Latency of the next call: the configured latency plus a random jitter.
+	 */
+	long nextLatencyMillis() {
+		SimulatorConfig current = config;
+		long millis = current.getLatencyMillis();
+		if (current.getLatencyJitterMillis() > 0)
+			millis += ThreadLocalRandom.current().nextLong(current.getLatencyJitterMillis() + 1);
+		return millis;
+	}
+
+	// the request Limit, capped by the simulated page size
+	private int pageSize(Integer limit) {
+		int pageSize = config.getPageSize() > 0 ? config.getPageSize() : Integer.MAX_VALUE;
+		return limit == null ? pageSize : Math.min(limit, pageSize);
+	}
+
+	private void acquire(CapacityLimiter capacity, int units) {
+		if (!capacity.tryAcquire(units))
+			throw throttle("The level of configured provisioned throughput for the table was exceeded");
+	}
+
+	private ProvisionedThroughputExceededException throttle(String message) {
+		throttledRequests.incrementAndGet();
+		return ProvisionedThroughputExceededException.builder().message(message).statusCode(400).build();
+	}
+
+	private boolean injectUnprocessed() {
+		double probability = config.getUnprocessedProbability();
+		return probability > 0 && ThreadLocalRandom.current().nextDouble() < probability;
+	}
+
+	private static List<Map<String, AttributeValue>> filter(List<Map<String, AttributeValue>> page,
+			String filterExpression, Map<String, String> names, Map<String, AttributeValue> values) {
+		if (filterExpression == null)
+			return page;
+		ConditionExpression filter = ConditionExpression.parse(filterExpression, names, values);
+		List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		for (Map<String, AttributeValue> item : page) {
+			if (filter.matches(item))
+				items.add(item);
+		}
+		return items;
+	}
+
+	/**
+	 * Position of the first item ordered after the ExclusiveStartKey. The key's
+	 * own item may have been deleted since the previous page, so this seeks by
+	 * order rather than looking the item up.
+	 */
+	private static int startIndex(List<Map<String, AttributeValue>> sorted, Map<String, AttributeValue> exclusiveStartKey,
+			Comparator<Map<String, AttributeValue>> order) {
+		if (exclusiveStartKey == null || exclusiveStartKey.isEmpty())
+			return 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			if (order.compare(sorted.get(i), exclusiveStartKey) > 0)
+				return i;
+		}
+		return sorted.size();
+	}
+
+	// total order of a query or scan: index key, then table key to break ties
+	private static Comparator<Map<String, AttributeValue>> keyOrder(SimulatedTable table, SimulatedTable schema) {
+		Comparator<Map<String, AttributeValue>> order = byAttribute(schema.getHashKeyName());
+		if (schema.getRangeKeyName() != null)
+			order = order.thenComparing(byAttribute(schema.getRangeKeyName()));
+		if (schema != table) {
+			order = order.thenComparing(byAttribute(table.getHashKeyName()));
+			if (table.getRangeKeyName() != null)
+				order = order.thenComparing(byAttribute(table.getRangeKeyName()));
+		}
+		return order;
+	}
+
+	private static Comparator<Map<String, AttributeValue>> byAttribute(String name) {
+		return (a, b) -> ConditionExpression.compare(a.get(name), b.get(name));
+	}
+
+	// table key plus, for an index, the index key
+	private static Map<String, AttributeValue> lastEvaluatedKey(Map<String, AttributeValue> item, SimulatedTable table,
+			SimulatedTable schema) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		for (SimulatedTable keySchema : new SimulatedTable[] { table, schema }) {
+			key.put(keySchema.getHashKeyName(), item.get(keySchema.getHashKeyName()));
+			if (keySchema.getRangeKeyName() != null)
+				key.put(keySchema.getRangeKeyName(), item.get(keySchema.getRangeKeyName()));
+		}
+		return key;
+	}
+
+	private static Map<String, AttributeValue> project(Map<String, AttributeValue> item, SimulatedTable table,
+			SimulatedTable index) {
+		if (index.getNonKeyAttributes() == null)
+			return item;
+		Map<String, AttributeValue> projected = lastEvaluatedKey(item, table, index);
+		for (String name : index.getNonKeyAttributes()) {
+			if (item.containsKey(name))
+				projected.put(name, item.get(name));
+		}
+		return projected;
+	}
+}
@@ -0,0 +1,179 @@
+package com.freebird.repository.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+public class InMemoryDynamoDbClientTest {
+
+	private InMemoryDynamoDbClient ddb;
+
+	@Before
+	public void setUp() {
+		ddb = new InMemoryDynamoDbClient();
+		ddb.createTable("orders", "pk", "sk");
+		ddb.createIndex("orders", "byAmount", "pk", "amount", false);
+		for (int i = 0; i < 10; i++) {
+			Map<String, AttributeValue> item = key("c" + (i % 2), String.format("o%02d", i));
+			item.put("amount", AttributeValue.builder().n(String.valueOf(i % 3)).build());
+			ddb.putItem(PutItemRequest.builder().tableName("orders").item(item).build());
+		}
+	}
+
+	@Test
+	public void queryContinuesAfterDeletedExclusiveStartKey() {
+		Map<String, String> names = new HashMap<String, String>();
+		names.put("#hk", "pk");
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":hk", s("c0"));
+		QueryRequest.Builder request = QueryRequest.builder().tableName("orders").keyConditionExpression("#hk = :hk")
+				.expressionAttributeNames(names).expressionAttributeValues(values).limit(2);
+
+		QueryResponse first = ddb.query(request.build());
+		assertEquals(key("c0", "o02"), first.lastEvaluatedKey());
+		ddb.deleteItem(DeleteItemRequest.builder().tableName("orders").key(first.lastEvaluatedKey()).build());
+
+		QueryResponse second = ddb.query(request.exclusiveStartKey(first.lastEvaluatedKey()).build());
+		assertEquals(s("o04"), second.items().get(0).get("sk"));
+		assertEquals(s("o06"), second.items().get(1).get("sk"));
+	}
+
+	@Test
+	public void indexQueryPagesOverEqualIndexKeys() {
+		Map<String, String> names = new HashMap<String, String>();
+		names.put("#hk", "pk");
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":hk", s("c1"));
+		QueryRequest.Builder request = QueryRequest.builder().tableName("orders").indexName("byAmount")
+				.keyConditionExpression("#hk = :hk").expressionAttributeNames(names).expressionAttributeValues(values)
+				.limit(1);
+
+		List<AttributeValue> sortKeys = new ArrayList<AttributeValue>();
+		Map<String, AttributeValue> lastEvaluatedKey = null;
+		do {
+			if (lastEvaluatedKey != null)
+				request.exclusiveStartKey(lastEvaluatedKey);
+			QueryResponse response = ddb.query(request.build());
+			for (Map<String, AttributeValue> item : response.items())
+				sortKeys.add(item.get("sk"));
+			lastEvaluatedKey = response.lastEvaluatedKey();
+		} while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+
+		// amounts 1,0,2,1,0 for o01,o03,o05,o07,o09
+		assertEquals(5, sortKeys.size());
+		assertEquals(s("o03"), sortKeys.get(0));
+		assertEquals(s("o09"), sortKeys.get(1));
+		assertEquals(s("o01"), sortKeys.get(2));
+		assertEquals(s("o07"), sortKeys.get(3));
+		assertEquals(s("o05"), sortKeys.get(4));
+	}
+
+	@Test
+	public void scanNeverRepeatsItemsWhenPageKeysAreDeleted() {
+		Set<Map<String, AttributeValue>> seen = new HashSet<Map<String, AttributeValue>>();
+		Map<String, AttributeValue> lastEvaluatedKey = null;
+		do {
+			ScanRequest.Builder request = ScanRequest.builder().tableName("orders").limit(3);
+			if (lastEvaluatedKey != null)
+				request.exclusiveStartKey(lastEvaluatedKey);
+			ScanResponse response = ddb.scan(request.build());
+			for (Map<String, AttributeValue> item : response.items())
+				assertTrue("returned twice: " + item, seen.add(key(item.get("pk").s(), item.get("sk").s())));
+			lastEvaluatedKey = response.lastEvaluatedKey();
+			if (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty())
+				ddb.deleteItem(DeleteItemRequest.builder().tableName("orders").key(lastEvaluatedKey).build());
+		} while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+
+		assertEquals(10, seen.size());
+	}
+
+	@Test
+	public void queryRejectsKeyAttributesInFilter() {
+		Map<String, String> names = new HashMap<String, String>();
+		names.put("#hk", "pk");
+		names.put("#f0", "amount");
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":hk", s("c0"));
+		values.put(":f0", AttributeValue.builder().n("1").build());
+		QueryRequest.Builder request = QueryRequest.builder().tableName("orders").keyConditionExpression("#hk = :hk")
+				.filterExpression("#f0 = :f0").expressionAttributeNames(names).expressionAttributeValues(values);
+
+		// amount is an ordinary attribute of the table but the range key of byAmount
+		assertEquals(1, ddb.query(request.build()).items().size());
+		try {
+			ddb.query(request.indexName("byAmount").build());
+			fail("expected a validation error");
+		} catch (DynamoDbException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("amount"));
+		}
+	}
+
+	@Test
+	public void callsBeyondProvisionedCapacityAreThrottledUntilRefilled() throws Exception {
+		ddb.setConfig(new SimulatorConfig().setWriteCapacityUnits(5));
+		ddb.createTable("limited", "pk", "sk");
+		for (int i = 0; i < 5; i++)
+			ddb.putItem(PutItemRequest.builder().tableName("limited").item(key("c0", "o" + i)).build());
+		try {
+			ddb.putItem(PutItemRequest.builder().tableName("limited").item(key("c0", "o5")).build());
+			fail("expected ProvisionedThroughputExceededException");
+		} catch (ProvisionedThroughputExceededException e) {
+			assertEquals(400, e.statusCode());
+		}
+		assertEquals(1, ddb.getThrottledRequestCount());
+		// reads have their own (unlimited) bucket; the limit applies to new tables only
+		ddb.getItem(GetItemRequest.builder().tableName("limited").key(key("c0", "o0")).build());
+		ddb.putItem(PutItemRequest.builder().tableName("orders").item(key("c9", "o9")).build());
+
+		Thread.sleep(300);
+		ddb.putItem(PutItemRequest.builder().tableName("limited").item(key("c0", "o5")).build());
+		assertEquals(1, ddb.getThrottledRequestCount());
+	}
+
+	@Test
+	public void callsAreDelayedByLatencyAndJitter() {
+		ddb.setConfig(new SimulatorConfig().setLatencyMillis(20).setLatencyJitterMillis(10));
+		for (int i = 0; i < 5; i++) {
+			long begin = System.nanoTime();
+			ddb.getItem(GetItemRequest.builder().tableName("orders").key(key("c0", "o00")).build());
+			long millis = (System.nanoTime() - begin) / 1_000_000;
+			assertTrue("latency " + millis, millis >= 20);
+		}
+		for (int i = 0; i < 100; i++) {
+			long latency = ddb.nextLatencyMillis();
+			assertTrue("latency " + latency, latency >= 20 && latency <= 30);
+		}
+	}
+
+	private static Map<String, AttributeValue> key(String pk, String sk) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("pk", s(pk));
+		key.put("sk", s(sk));
+		return key;
+	}
+
+	private static AttributeValue s(String value) {
+		return AttributeValue.builder().s(value).build();
+	}
+}
@@ -0,0 +1,130 @@
+package com.freebird.repository.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.SequenceNumberRange;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.StreamDescription;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+/**
+ * In-process {@link DynamoDbStreamsClient} over the streams enabled with
+ * {@link InMemoryDynamoDbClient#enableStream}. Supports DescribeStream,
+ * GetShardIterator and GetRecords with the latency configured on the table
+ * client; records are kept for the life of the simulator.
+ */
+public class InMemoryDynamoDbStreamsClient implements DynamoDbStreamsClient {
+
+	private static final int GET_RECORDS_LIMIT = 1000;
+
+	private final InMemoryDynamoDbClient ddb;
+
+	public InMemoryDynamoDbStreamsClient(InMemoryDynamoDbClient ddb) {
+		this.ddb = ddb;
+	}
+
+	@Override
+	public String serviceName() {
+		return SERVICE_NAME;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public DescribeStreamResponse describeStream(DescribeStreamRequest describeStreamRequest) {
+		ddb.simulateLatency();
+		SimulatedStream stream = ddb.stream(describeStreamRequest.streamArn());
+
+		List<Shard> shards = new ArrayList<Shard>();
+		boolean started = describeStreamRequest.exclusiveStartShardId() == null;
+		for (SimulatedStream.Shard shard : stream.getShards()) {
+			if (started) {
+				shards.add(Shard.builder().shardId(shard.shardId).parentShardId(shard.parentShardId)
+						.sequenceNumberRange(SequenceNumberRange.builder()
+								.startingSequenceNumber(shard.startingSequenceNumber)
+								.endingSequenceNumber(shard.endingSequenceNumber).build())
+						.build());
+			} else {
+				started = shard.shardId.equals(describeStreamRequest.exclusiveStartShardId());
+			}
+		}
+
+		return DescribeStreamResponse.builder().streamDescription(StreamDescription.builder()
+				.streamArn(stream.getStreamArn()).tableName(stream.getTableName())
+				.streamViewType(stream.getViewType()).shards(shards).build()).build();
+	}
+
+	@Override
+	public GetShardIteratorResponse getShardIterator(GetShardIteratorRequest getShardIteratorRequest) {
+		ddb.simulateLatency();
+		SimulatedStream stream = ddb.stream(getShardIteratorRequest.streamArn());
+		SimulatedStream.Shard shard = shard(stream, getShardIteratorRequest.shardId());
+
+		int position;
+		switch (getShardIteratorRequest.shardIteratorType()) {
+			case TRIM_HORIZON:
+				position = 0;
+				break;
+			case LATEST:
+				position = stream.size(shard);
+				break;
+			case AT_SEQUENCE_NUMBER:
+				position = stream.position(shard, getShardIteratorRequest.sequenceNumber(), false);
+				break;
+			case AFTER_SEQUENCE_NUMBER:
+				position = stream.position(shard, getShardIteratorRequest.sequenceNumber(), true);
+				break;
+			default:
+				throw ConditionExpression.validation("Unsupported ShardIteratorType: "
+						+ getShardIteratorRequest.shardIteratorType());
+		}
+		return GetShardIteratorResponse.builder().shardIterator(iterator(stream, shard, position)).build();
+	}
+
+	@Override
+	public GetRecordsResponse getRecords(GetRecordsRequest getRecordsRequest) {
+		ddb.simulateLatency();
+		String iterator = getRecordsRequest.shardIterator();
+		int last = iterator == null ? -1 : iterator.lastIndexOf('|');
+		int middle = last < 0 ? -1 : iterator.lastIndexOf('|', last - 1);
+		if (middle < 0)
+			throw ConditionExpression.validation("Invalid ShardIterator: " + iterator);
+
+		SimulatedStream stream = ddb.stream(iterator.substring(0, middle));
+		SimulatedStream.Shard shard = shard(stream, iterator.substring(middle + 1, last));
+		int position = Integer.parseInt(iterator.substring(last + 1));
+		int limit = getRecordsRequest.limit() == null ? GET_RECORDS_LIMIT : getRecordsRequest.limit();
+
+		// read the closing state first: a closed shard gets no more records
+		boolean closed = shard.endingSequenceNumber != null;
+		List<Record> records = stream.read(shard, position, limit);
+		int next = position + records.size();
+		GetRecordsResponse.Builder response = GetRecordsResponse.builder().records(records);
+		if (!closed || next < stream.size(shard))
+			response.nextShardIterator(iterator(stream, shard, next));
+		return response.build();
+	}
+
+	private static SimulatedStream.Shard shard(SimulatedStream stream, String shardId) {
+		SimulatedStream.Shard shard = stream.getShard(shardId);
+		if (shard == null)
+			throw ResourceNotFoundException.builder().message("Requested resource not found: Shard does not exist")
+					.statusCode(400).build();
+		return shard;
+	}
+
+	private static String iterator(SimulatedStream stream, SimulatedStream.Shard shard, int position) {
+		return stream.getStreamArn() + "|" + shard.shardId + "|" + position;
+	}
+}
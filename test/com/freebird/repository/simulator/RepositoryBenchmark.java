@@ -0,0 +1,275 @@
+package com.freebird.repository.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.freebird.repository.DynamoCRUDRepository;
+import com.freebird.repository.hotkey.HotKeyDetector;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * Macro-benchmark of {@link DynamoCRUDRepository} against
+ * {@link InMemoryDynamoDbClient}. Reports throughput and p50/p99 latency per
+ * operation, plus the throttled and unprocessed requests the simulator injected.
+ *
+ * Lives in the test source root, so it is not packaged with the library; run
+ * it from the test classpath, e.g. {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=...RepositoryBenchmark}.
+ *
+ * Arguments are key=value pairs, e.g.
+ * {@code threads=16 ops=5000 items=2000 batch=250 latency=5 jitter=10 rcu=2000 wcu=1000 unprocessed=0.05}
+ * {@code lazy=true listSize=200} compares lazy loading on items with large
+ * List/Map attributes of which only the keys and counter are read.
+ * {@code hotKeys=5 sampleRate=0.1} samples hash keys and prints the hottest
+ * keys and skew ratio per table and operation.
+ * {@code async=true} also issues the getItem calls through
+ * {@link InMemoryDynamoDbAsyncClient}, all in flight at once, to compare with
+ * the thread-per-call numbers.
+ */
+public class RepositoryBenchmark {
+
+	private static final String PARTITION = "bench";
+
+	private final Map<String, String> settings = new HashMap<String, String>();
+
+	private final InMemoryDynamoDbClient ddb;
+
+	private final BenchmarkRepository repository = new BenchmarkRepository();
+
+	public RepositoryBenchmark(String[] args) {
+		settings.put("threads", "8");
+		settings.put("ops", "2000");
+		settings.put("items", "1000");
+		settings.put("batch", "200");
+		settings.put("latency", "2");
+		settings.put("jitter", "3");
+		settings.put("rcu", "0");
+		settings.put("wcu", "0");
+		settings.put("unprocessed", "0");
+		settings.put("lazy", "false");
+		settings.put("listSize", "20");
+		settings.put("hotKeys", "0");
+		settings.put("sampleRate", "1");
+		settings.put("async", "false");
+		for (String arg : args) {
+			String[] pair = arg.split("=", 2);
+			if (pair.length != 2 || !settings.containsKey(pair[0]))
+				throw new IllegalArgumentException("Unknown argument: " + arg + ", expected one of " + settings.keySet());
+			settings.put(pair[0], pair[1]);
+		}
+
+		SimulatorConfig config = new SimulatorConfig().setLatencyMillis(longSetting("latency"))
+				.setLatencyJitterMillis(longSetting("jitter"))
+				.setReadCapacityUnits(Double.parseDouble(settings.get("rcu")))
+				.setWriteCapacityUnits(Double.parseDouble(settings.get("wcu")))
+				.setUnprocessedProbability(Double.parseDouble(settings.get("unprocessed")));
+		ddb = new InMemoryDynamoDbClient(config);
+		ddb.createTable("benchmark", "pk", "typeRange");
+		repository.setDynamoDbClient(ddb);
+		repository.setLazyLoading(Boolean.parseBoolean(settings.get("lazy")));
+		if (longSetting("hotKeys") > 0)
+			repository.setHotKeyDetector(new HotKeyDetector(Double.parseDouble(settings.get("sampleRate"))));
+	}
+
+	public static void main(String[] args) throws Exception {
+		new RepositoryBenchmark(args).run();
+	}
+
+	public void run() throws Exception {
+		final int items = (int) longSetting("items");
+		final int batch = (int) longSetting("batch");
+		System.out.println("settings " + settings);
+
+		measure("saveItem", i -> repository.saveItem(item(i % items)));
+		measure("getItem", i -> repository.getItem(key(i % items)).getCounter());
+		if (Boolean.parseBoolean(settings.get("async")))
+			measureAsyncGetItem(items);
+		measure("updateItem", i -> {
+			BenchmarkItem item = item(i % items);
+			item.setCounter((long) i);
+			repository.updateItem(item);
+		});
+		measure("queryByRangeKey", i -> {
+			BenchmarkItem prefix = new BenchmarkItem();
+			prefix.setPk(PARTITION);
+			prefix.setTypeRange("item#" + (i % 10));
+			for (BenchmarkItem item : repository.queryByRangeKey(prefix))
+				item.getCounter();
+		});
+
+		measure("batchWritePer25Item x" + batch, i -> {
+			List<WriteRequest> requests = new ArrayList<WriteRequest>();
+			for (int j = 0; j < batch; j++)
+				requests.add(WriteRequest.builder()
+						.putRequest(PutRequest.builder().item(attributes((i * batch + j) % items)).build()).build());
+			repository.batchWrite(requests);
+		});
+
+		final AtomicLong requested = new AtomicLong();
+		final AtomicLong returned = new AtomicLong();
+		measure("batchGetPer100Item x" + batch, i -> {
+			List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>();
+			for (int j = 0; j < batch; j++)
+				keys.add(keyAttributes((i * batch + j) % items));
+			requested.addAndGet(keys.size());
+			returned.addAndGet(repository.batchGet(keys).size());
+		});
+		System.out.println(String.format("batchGetPer100Item returned %d of %d requested items", returned.get(),
+				requested.get()));
+		System.out.println(String.format("simulator throttled=%d unprocessed=%d", ddb.getThrottledRequestCount(),
+				ddb.getUnprocessedRequestCount()));
+
+		HotKeyDetector detector = repository.getHotKeyDetector();
+		if (detector != null) {
+			for (String tracked : detector.getTrackedOperations()) {
+				String[] pair = tracked.split("\\|", 2);
+				System.out.println(String.format("hot keys %-36s skew=%.2f %s", tracked,
+						detector.getSkewRatio(pair[0], pair[1]),
+						detector.getHotKeys(pair[0], pair[1], (int) longSetting("hotKeys"))));
+			}
+		}
+	}
+
+	private void measure(String name, final Operation operation) throws InterruptedException {
+		final int ops = (int) longSetting("ops");
+		final long[] latencies = new long[ops];
+		final AtomicInteger errors = new AtomicInteger();
+		long throttledBefore = ddb.getThrottledRequestCount();
+		long unprocessedBefore = ddb.getUnprocessedRequestCount();
+
+		ExecutorService executor = Executors.newFixedThreadPool((int) longSetting("threads"));
+		long start = System.nanoTime();
+		for (int i = 0; i < ops; i++) {
+			final int index = i;
+			executor.execute(() -> {
+				long begin = System.nanoTime();
+				try {
+					operation.apply(index);
+				} catch (Exception e) {
+					errors.incrementAndGet();
+				}
+				latencies[index] = System.nanoTime() - begin;
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.HOURS);
+		long elapsed = System.nanoTime() - start;
+
+		Arrays.sort(latencies);
+		System.out.println(String.format("%-28s ops=%d errors=%d throughput=%.1f ops/s p50=%.2f ms p99=%.2f ms throttled=%d unprocessed=%d",
+				name, ops, errors.get(), ops * 1_000_000_000d / elapsed, percentile(latencies, 0.50) / 1_000_000d,
+				percentile(latencies, 0.99) / 1_000_000d, ddb.getThrottledRequestCount() - throttledBefore,
+				ddb.getUnprocessedRequestCount() - unprocessedBefore));
+	}
+
+	private void measureAsyncGetItem(int items) throws InterruptedException {
+		final int ops = (int) longSetting("ops");
+		final long[] latencies = new long[ops];
+		final AtomicInteger errors = new AtomicInteger();
+		long throttledBefore = ddb.getThrottledRequestCount();
+
+		InMemoryDynamoDbAsyncClient async = new InMemoryDynamoDbAsyncClient(ddb);
+		List<CompletableFuture<?>> calls = new ArrayList<CompletableFuture<?>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < ops; i++) {
+			final int index = i;
+			final long begin = System.nanoTime();
+			calls.add(async.getItem(GetItemRequest.builder().tableName("benchmark").key(keyAttributes(i % items)).build())
+					.whenComplete((response, failure) -> {
+						if (failure != null)
+							errors.incrementAndGet();
+						latencies[index] = System.nanoTime() - begin;
+					}));
+		}
+		for (CompletableFuture<?> call : calls) {
+			try {
+				call.join();
+			} catch (RuntimeException e) {
+				// counted in whenComplete
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		async.close();
+
+		Arrays.sort(latencies);
+		System.out.println(String.format("%-28s ops=%d errors=%d throughput=%.1f ops/s p50=%.2f ms p99=%.2f ms throttled=%d",
+				"async getItem", ops, errors.get(), ops * 1_000_000_000d / elapsed,
+				percentile(latencies, 0.50) / 1_000_000d, percentile(latencies, 0.99) / 1_000_000d,
+				ddb.getThrottledRequestCount() - throttledBefore));
+	}
+
+	private static long percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0)
+			return 0;
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	private long longSetting(String name) {
+		return Long.parseLong(settings.get(name));
+	}
+
+	private static BenchmarkItem key(int i) {
+		BenchmarkItem item = new BenchmarkItem();
+		item.setPk(PARTITION);
+		item.setTypeRange("item#" + i);
+		return item;
+	}
+
+	private BenchmarkItem item(int i) {
+		BenchmarkItem item = key(i);
+		item.setPayload("payload-" + i);
+		item.setCounter(0L);
+		List<String> history = new ArrayList<String>();
+		Map<String, String> attributes = new HashMap<String, String>();
+		for (int j = 0; j < longSetting("listSize"); j++) {
+			history.add("event-" + j);
+			attributes.put("attribute-" + j, "value-" + j);
+		}
+		item.setHistory(history);
+		item.setAttributes(attributes);
+		return item;
+	}
+
+	private static Map<String, AttributeValue> keyAttributes(int i) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("pk", AttributeValue.builder().s(PARTITION).build());
+		key.put("typeRange", AttributeValue.builder().s("item#" + i).build());
+		return key;
+	}
+
+	private static Map<String, AttributeValue> attributes(int i) {
+		Map<String, AttributeValue> attributes = keyAttributes(i);
+		attributes.put("payload", AttributeValue.builder().s("payload-" + i).build());
+		attributes.put("counter", AttributeValue.builder().n("0").build());
+		return attributes;
+	}
+
+	private interface Operation {
+		void apply(int index) throws Exception;
+	}
+
+	private static class BenchmarkRepository extends DynamoCRUDRepository<BenchmarkItem> {
+
+		List<Map<String, AttributeValue>> batchGet(List<Map<String, AttributeValue>> keys) {
+			return batchGetPer100Item("benchmark", keys);
+		}
+
+		void batchWrite(List<WriteRequest> requests) {
+			batchWritePer25Item("benchmark", requests);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.freebird.repository.simulator;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.StreamRecord;
+import software.amazon.awssdk.services.dynamodb.model.StreamViewType;
+
+/**
+ * Change records of one simulated table. Records are spread over the open
+ * shards by hash key, so the changes of one item stay in one shard and in write
+ * order.
+ */
+class SimulatedStream {
+
+	private static final AtomicLong SEQUENCE = new AtomicLong(100000000000000000L);
+
+	private final String streamArn;
+
+	private final SimulatedTable table;
+
+	private final StreamViewType viewType;
+
+	private final List<Shard> shards = new ArrayList<Shard>();
+
+	private final List<Shard> openShards = new ArrayList<Shard>();
+
+	private int shardCounter;
+
+	SimulatedStream(String streamArn, SimulatedTable table, StreamViewType viewType, int shardCount) {
+		this.streamArn = streamArn;
+		this.table = table;
+		this.viewType = viewType;
+		for (int i = 0; i < shardCount; i++)
+			openShards.add(newShard(null));
+	}
+
+	String getStreamArn() {
+		return streamArn;
+	}
+
+	String getTableName() {
+		return table.getTableName();
+	}
+
+	StreamViewType getViewType() {
+		return viewType;
+	}
+
+	synchronized List<Shard> getShards() {
+		return new ArrayList<Shard>(shards);
+	}
+
+	synchronized Shard getShard(String shardId) {
+		for (Shard shard : shards) {
+			if (shard.shardId.equals(shardId))
+				return shard;
+		}
+		return null;
+	}
+
+	synchronized void record(Map<String, AttributeValue> oldItem, Map<String, AttributeValue> newItem) {
+		if (oldItem == null && newItem == null)
+			return;
+		Map<String, AttributeValue> item = newItem != null ? newItem : oldItem;
+
+		Map<String, AttributeValue> keys = new HashMap<String, AttributeValue>();
+		keys.put(table.getHashKeyName(), item.get(table.getHashKeyName()));
+		if (table.getRangeKeyName() != null)
+			keys.put(table.getRangeKeyName(), item.get(table.getRangeKeyName()));
+
+		String sequenceNumber = String.valueOf(SEQUENCE.incrementAndGet());
+		StreamRecord.Builder streamRecord = StreamRecord.builder().keys(keys).sequenceNumber(sequenceNumber)
+				.streamViewType(viewType).approximateCreationDateTime(Instant.now());
+		if (newItem != null && (viewType == StreamViewType.NEW_IMAGE || viewType == StreamViewType.NEW_AND_OLD_IMAGES))
+			streamRecord.newImage(newItem);
+		if (oldItem != null && (viewType == StreamViewType.OLD_IMAGE || viewType == StreamViewType.NEW_AND_OLD_IMAGES))
+			streamRecord.oldImage(oldItem);
+
+		OperationType operation = oldItem == null ? OperationType.INSERT
+				: newItem == null ? OperationType.REMOVE : OperationType.MODIFY;
+		Record record = Record.builder().eventID(UUID.randomUUID().toString()).eventName(operation)
+				.eventSource("aws:dynamodb").dynamodb(streamRecord.build()).build();
+
+		int shard = Math.floorMod(item.get(table.getHashKeyName()).hashCode(), openShards.size());
+		openShards.get(shard).records.add(record);
+	}
+
+	synchronized List<Record> read(Shard shard, int from, int limit) {
+		int to = Math.min(shard.records.size(), from + limit);
+		return from >= to ? new ArrayList<Record>() : new ArrayList<Record>(shard.records.subList(from, to));
+	}
+
+	synchronized int size(Shard shard) {
+		return shard.records.size();
+	}
+
+	/**
+	 * Position of the first record of the shard with a sequence number at (or
+	 * after) the given one.
+	 */
+	synchronized int position(Shard shard, String sequenceNumber, boolean after) {
+		BigInteger target = new BigInteger(sequenceNumber);
+		for (int i = 0; i < shard.records.size(); i++) {
+			int cmp = new BigInteger(shard.records.get(i).dynamodb().sequenceNumber()).compareTo(target);
+			if (after ? cmp > 0 : cmp >= 0)
+				return i;
+		}
+		return shard.records.size();
+	}
+
+	/**
+	 * Closes every open shard and opens one child per closed shard, as DynamoDB
+	 * does when partitions split or shards roll over.
+	 */
+	synchronized void rollShards() {
+		List<Shard> children = new ArrayList<Shard>();
+		for (Shard shard : openShards) {
+			shard.endingSequenceNumber = String.valueOf(SEQUENCE.incrementAndGet());
+			children.add(newShard(shard.shardId));
+		}
+		openShards.clear();
+		openShards.addAll(children);
+	}
+
+	/**
+	 * Drops the closed shards, as DynamoDB does once they pass the stream
+	 * retention.
+	 */
+	synchronized void trimClosedShards() {
+		shards.removeIf(shard -> shard.endingSequenceNumber != null);
+	}
+
+	private Shard newShard(String parentShardId) {
+		Shard shard = new Shard(String.format("shardId-%020d-%08d", System.currentTimeMillis(), shardCounter++),
+				parentShardId, String.valueOf(SEQUENCE.incrementAndGet()));
+		shards.add(shard);
+		return shard;
+	}
+
+	static class Shard {
+
+		final String shardId;
+
+		final String parentShardId;
+
+		final String startingSequenceNumber;
+
+		volatile String endingSequenceNumber;
+
+		final List<Record> records = new ArrayList<Record>();
+
+		Shard(String shardId, String parentShardId, String startingSequenceNumber) {
+			this.shardId = shardId;
+			this.parentShardId = parentShardId;
+			this.startingSequenceNumber = startingSequenceNumber;
+		}
+	}
+}
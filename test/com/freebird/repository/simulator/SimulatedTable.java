@@ -0,0 +1,199 @@
+package com.freebird.repository.simulator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeAction;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValueUpdate;
+
+/**
+ * Items of one simulated table, keyed by hash and (optional) range key value.
+ */
+class SimulatedTable {
+
+	private final String tableName;
+
+	private final String hashKeyName;
+
+	private final String rangeKeyName;
+
+	private final ConcurrentHashMap<String, SimulatedTable> indexes = new ConcurrentHashMap<String, SimulatedTable>();
+
+	// null for the table and ALL indexes, which hold every attribute
+	private Set<String> nonKeyAttributes;
+
+	private volatile SimulatedStream stream;
+
+	private final CapacityLimiter readCapacity;
+
+	private final CapacityLimiter writeCapacity;
+
+	// hash key value -> range key value (hash key value again for hash-only tables) -> item
+	private final ConcurrentHashMap<AttributeValue, ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>>> partitions = new ConcurrentHashMap<AttributeValue, ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>>>();
+
+	SimulatedTable(String tableName, String hashKeyName, String rangeKeyName, SimulatorConfig config) {
+		this.tableName = tableName;
+		this.hashKeyName = hashKeyName;
+		this.rangeKeyName = rangeKeyName;
+		this.readCapacity = new CapacityLimiter(config.getReadCapacityUnits());
+		this.writeCapacity = new CapacityLimiter(config.getWriteCapacityUnits());
+	}
+
+	private SimulatedTable(String indexName, String hashKeyName, String rangeKeyName, SimulatedTable table) {
+		this.tableName = indexName;
+		this.hashKeyName = hashKeyName;
+		this.rangeKeyName = rangeKeyName;
+		this.readCapacity = table.readCapacity;
+		this.writeCapacity = table.writeCapacity;
+	}
+
+	String getTableName() {
+		return tableName;
+	}
+
+	String getHashKeyName() {
+		return hashKeyName;
+	}
+
+	String getRangeKeyName() {
+		return rangeKeyName;
+	}
+
+	/**
+	 * Registers a secondary index. The index shares the items and capacity of
+	 * this table and only carries its own key schema and projection: null
+	 * nonKeyAttributes project all attributes, an empty set only the keys.
+	 */
+	void addIndex(String indexName, String indexHashKeyName, String indexRangeKeyName, Set<String> nonKeyAttributes) {
+		SimulatedTable index = new SimulatedTable(indexName, indexHashKeyName, indexRangeKeyName, this);
+		index.nonKeyAttributes = nonKeyAttributes;
+		indexes.put(indexName, index);
+	}
+
+	SimulatedTable getIndex(String indexName) {
+		SimulatedTable index = indexes.get(indexName);
+		if (index == null)
+			throw ConditionExpression.validation("The table " + tableName + " does not have the specified index: "
+					+ indexName);
+		return index;
+	}
+
+	Set<String> getNonKeyAttributes() {
+		return nonKeyAttributes;
+	}
+
+	CapacityLimiter getReadCapacity() {
+		return readCapacity;
+	}
+
+	CapacityLimiter getWriteCapacity() {
+		return writeCapacity;
+	}
+
+	Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+		ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>> partition = partitions.get(hashOf(key));
+		return partition == null ? null : partition.get(rangeOf(key));
+	}
+
+	void put(final Map<String, AttributeValue> item) {
+		partition(item).compute(rangeOf(item), (k, current) -> {
+			Map<String, AttributeValue> newItem = new HashMap<String, AttributeValue>(item);
+			recordChange(current, newItem);
+			return newItem;
+		});
+	}
+
+	void update(final Map<String, AttributeValue> key, final Map<String, AttributeValueUpdate> updates) {
+		partition(key).compute(rangeOf(key), (k, current) -> {
+			Map<String, AttributeValue> item = current == null ? new HashMap<String, AttributeValue>(key)
+					: new HashMap<String, AttributeValue>(current);
+			for (Entry<String, AttributeValueUpdate> update : updates.entrySet()) {
+				String name = update.getKey();
+				AttributeValue value = update.getValue().value();
+				AttributeAction action = update.getValue().action();
+
+				if (action == AttributeAction.DELETE || value == null) {
+					item.remove(name);
+				} else if (action == AttributeAction.ADD && item.get(name) != null && value.n() != null
+						&& item.get(name).n() != null) {
+					BigDecimal sum = new BigDecimal(item.get(name).n()).add(new BigDecimal(value.n()));
+					item.put(name, AttributeValue.builder().n(sum.toPlainString()).build());
+				} else {
+					item.put(name, value);
+				}
+			}
+			recordChange(current, item);
+			return item;
+		});
+	}
+
+	void delete(Map<String, AttributeValue> key) {
+		ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>> partition = partitions.get(hashOf(key));
+		if (partition != null) {
+			partition.computeIfPresent(rangeOf(key), (k, current) -> {
+				recordChange(current, null);
+				return null;
+			});
+		}
+	}
+
+	void setStream(SimulatedStream stream) {
+		this.stream = stream;
+	}
+
+	SimulatedStream getStream() {
+		return stream;
+	}
+
+	// called under the lock of the item key, so records of one key keep their order
+	private void recordChange(Map<String, AttributeValue> oldItem, Map<String, AttributeValue> newItem) {
+		SimulatedStream current = stream;
+		if (current != null)
+			current.record(oldItem, newItem);
+	}
+
+	/**
+	 * Items sharing the given hash key value.
+	 */
+	List<Map<String, AttributeValue>> snapshot(AttributeValue hashKeyValue) {
+		ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>> partition = partitions.get(hashKeyValue);
+		return partition == null ? new ArrayList<Map<String, AttributeValue>>()
+				: new ArrayList<Map<String, AttributeValue>>(partition.values());
+	}
+
+	List<Map<String, AttributeValue>> snapshot() {
+		List<Map<String, AttributeValue>> all = new ArrayList<Map<String, AttributeValue>>();
+		for (ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>> partition : partitions.values())
+			all.addAll(partition.values());
+		return all;
+	}
+
+	private ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>> partition(Map<String, AttributeValue> key) {
+		return partitions.computeIfAbsent(hashOf(key),
+				k -> new ConcurrentHashMap<AttributeValue, Map<String, AttributeValue>>());
+	}
+
+	private AttributeValue hashOf(Map<String, AttributeValue> item) {
+		AttributeValue hash = item.get(hashKeyName);
+		if (hash == null)
+			throw ConditionExpression.validation("Missing the key " + hashKeyName + " in the item of table " + tableName);
+		return hash;
+	}
+
+	private AttributeValue rangeOf(Map<String, AttributeValue> item) {
+		if (rangeKeyName == null)
+			return hashOf(item);
+
+		AttributeValue range = item.get(rangeKeyName);
+		if (range == null)
+			throw ConditionExpression.validation("Missing the key " + rangeKeyName + " in the item of table " + tableName);
+		return range;
+	}
+}
@@ -0,0 +1,83 @@
+package com.freebird.repository.simulator;
+
+/**
+ * Fault and latency settings of {@link InMemoryDynamoDbClient}. Capacity units
+ * are counted per item (not per 4KB/1KB) and apply to every table created after
+ * the config is set; zero means unlimited.
+ */
+public class SimulatorConfig {
+
+	private long latencyMillis;
+
+	private long latencyJitterMillis;
+
+	private double readCapacityUnits;
+
+	private double writeCapacityUnits;
+
+	private double unprocessedProbability;
+
+	private int pageSize;
+
+	public long getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	public SimulatorConfig setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+		return this;
+	}
+
+	public long getLatencyJitterMillis() {
+		return latencyJitterMillis;
+	}
+
+	public SimulatorConfig setLatencyJitterMillis(long latencyJitterMillis) {
+		this.latencyJitterMillis = latencyJitterMillis;
+		return this;
+	}
+
+	public double getReadCapacityUnits() {
+		return readCapacityUnits;
+	}
+
+	public SimulatorConfig setReadCapacityUnits(double readCapacityUnits) {
+		this.readCapacityUnits = readCapacityUnits;
+		return this;
+	}
+
+	public double getWriteCapacityUnits() {
+		return writeCapacityUnits;
+	}
+
+	public SimulatorConfig setWriteCapacityUnits(double writeCapacityUnits) {
+		this.writeCapacityUnits = writeCapacityUnits;
+		return this;
+	}
+
+	/**
+	 * Probability (0..1) that a single key of a BatchGetItem or request of a
+	 * BatchWriteItem is returned as unprocessed even when capacity is available.
+	 */
+	public double getUnprocessedProbability() {
+		return unprocessedProbability;
+	}
+
+	public SimulatorConfig setUnprocessedProbability(double unprocessedProbability) {
+		this.unprocessedProbability = unprocessedProbability;
+		return this;
+	}
+
+	/**
+	 * Items per Query/Scan page when the request has no smaller Limit, standing
+	 * in for DynamoDB's 1MB page; zero means one page holds every item.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public SimulatorConfig setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+		return this;
+	}
+}
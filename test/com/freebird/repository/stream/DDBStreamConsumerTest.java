@@ -0,0 +1,306 @@
+package com.freebird.repository.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import com.freebird.repository.OrderItem;
+import com.freebird.repository.OrderRepository;
+import com.freebird.repository.simulator.InMemoryDynamoDbStreamsClient;
+import com.freebird.repository.simulator.SimulatorConfig;
+
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.dynamodb.model.OperationType;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.StreamViewType;
+
+public class DDBStreamConsumerTest {
+
+	private OrderRepository repository;
+
+	private InMemoryCheckpointStore checkpoints;
+
+	private String streamArn;
+
+	private final List<DDBStreamConsumer<OrderItem>> consumers = new ArrayList<DDBStreamConsumer<OrderItem>>();
+
+	@Before
+	public void setUp() throws Exception {
+		repository = OrderRepository.inMemory(new SimulatorConfig());
+		checkpoints = new InMemoryCheckpointStore();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (DDBStreamConsumer<OrderItem> consumer : consumers)
+			consumer.stop();
+	}
+
+	@Test
+	public void readsShardsInParallelKeepingPerItemOrder() throws Exception {
+		enableStream(4);
+		DDBStreamConsumer<OrderItem> consumer = consumer(4);
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final Map<String, List<String>> byCustomer = Collections.synchronizedMap(new HashMap<String, List<String>>());
+		consumer.addListener(event -> {
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			Thread.sleep(20);
+			active.decrementAndGet();
+			byCustomer.computeIfAbsent(event.getNewEntity().getCustomer(), k -> new ArrayList<String>())
+					.add(event.getNewEntity().getOrder());
+		});
+
+		for (int order = 0; order < 3; order++) {
+			for (int customer = 0; customer < 20; customer++)
+				repository.saveItem(new OrderItem("c" + customer, "o" + order));
+		}
+
+		assertEquals(60, consumer.poll());
+		assertTrue("max parallel reads " + maxActive.get(), maxActive.get() > 1);
+		assertEquals(20, byCustomer.size());
+		for (List<String> orders : byCustomer.values())
+			assertEquals(Arrays.asList("o0", "o1", "o2"), orders);
+		assertEquals(0, consumer.getFailureCount());
+	}
+
+	@Test
+	public void readsParentShardBeforeChild() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> consumer = consumer(2);
+		List<String> delivered = collectOrders(consumer);
+
+		repository.saveItem(new OrderItem("c1", "o1"));
+		repository.saveItem(new OrderItem("c1", "o2"));
+		repository.getSimulator().rollShards(streamArn);
+		repository.saveItem(new OrderItem("c1", "o3"));
+
+		// the child is not read while its parent has records left
+		assertEquals(2, consumer.poll());
+		assertEquals(Arrays.asList("o1", "o2"), delivered);
+		assertEquals(1, consumer.poll());
+		assertEquals(Arrays.asList("o1", "o2", "o3"), delivered);
+		assertEquals(0, consumer.poll());
+	}
+
+	@Test
+	public void newConsumerResumesFromCheckpoint() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> first = consumer(1);
+		List<String> firstDelivered = collectOrders(first);
+		repository.saveItem(new OrderItem("c1", "o1"));
+		repository.saveItem(new OrderItem("c1", "o2"));
+		assertEquals(2, first.poll());
+		first.stop();
+
+		repository.saveItem(new OrderItem("c1", "o3"));
+		DDBStreamConsumer<OrderItem> second = consumer(1);
+		List<String> secondDelivered = collectOrders(second);
+		assertEquals(1, second.poll());
+		assertEquals(Arrays.asList("o1", "o2"), firstDelivered);
+		assertEquals(Arrays.asList("o3"), secondDelivered);
+	}
+
+	@Test
+	public void decodesOldImageOnModifyAndRemove() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> consumer = consumer(1);
+		final List<DDBChangeEvent<OrderItem>> events = new ArrayList<DDBChangeEvent<OrderItem>>();
+		consumer.addListener(events::add);
+
+		OrderItem item = new OrderItem("c1", "o1");
+		item.setNote("first");
+		repository.saveItem(item);
+		item.setNote("second");
+		repository.saveItem(item);
+		repository.deleteItem(item);
+		assertEquals(3, consumer.poll());
+
+		assertEquals(OperationType.INSERT, events.get(0).getOperation());
+		assertEquals("first", events.get(0).getNewEntity().getNote());
+		assertNull(events.get(0).getOldEntity());
+
+		assertEquals(OperationType.MODIFY, events.get(1).getOperation());
+		assertEquals("second", events.get(1).getNewEntity().getNote());
+		assertEquals("first", events.get(1).getOldEntity().getNote());
+
+		assertEquals(OperationType.REMOVE, events.get(2).getOperation());
+		assertNull(events.get(2).getNewEntity());
+		assertEquals("second", events.get(2).getOldEntity().getNote());
+		assertEquals("o1", events.get(2).getKeys().get("orderId").s());
+	}
+
+	@Test
+	public void cacheInvalidationEvictsChangedItems() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> consumer = consumer(1);
+		ConcurrentMapCache cache = new ConcurrentMapCache("orders");
+		cache.put("c1", "cached");
+		cache.put("c2", "cached");
+		consumer.addListener(new CacheInvalidationListener<OrderItem>(cache,
+				event -> event.getKeys().get("customerId").s()));
+
+		repository.saveItem(new OrderItem("c1", "o1"));
+		assertEquals(1, consumer.poll());
+
+		assertNull(cache.get("c1"));
+		assertNotNull(cache.get("c2"));
+	}
+
+	@Test
+	public void restartsAfterStop() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> consumer = consumer(1);
+		List<String> delivered = collectOrders(consumer);
+
+		repository.saveItem(new OrderItem("c1", "o1"));
+		consumer.start(5);
+		awaitSize(delivered, 1);
+		consumer.stop();
+		try {
+			consumer.poll();
+			fail("expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// stopped
+		}
+
+		repository.saveItem(new OrderItem("c1", "o2"));
+		consumer.start(5);
+		awaitSize(delivered, 2);
+		assertEquals(Arrays.asList("o1", "o2"), delivered);
+		assertEquals(0, consumer.getFailureCount());
+	}
+
+	@Test
+	public void forgetsTrimmedShards() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> consumer = consumer(1);
+		List<String> delivered = collectOrders(consumer);
+		repository.saveItem(new OrderItem("c1", "o1"));
+		repository.getSimulator().rollShards(streamArn);
+		repository.saveItem(new OrderItem("c1", "o2"));
+		consumer.poll();
+		consumer.poll();
+		assertEquals(2, consumer.getTrackedShardCount());
+
+		repository.getSimulator().trimClosedShards(streamArn);
+		repository.saveItem(new OrderItem("c1", "o3"));
+		assertEquals(1, consumer.poll());
+		assertEquals(1, consumer.getTrackedShardCount());
+		assertEquals(Arrays.asList("o1", "o2", "o3"), delivered);
+	}
+
+	@Test
+	public void poisonRecordIsSkippedAndCheckpointedPast() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> consumer = consumer(1);
+		final List<String> delivered = new ArrayList<String>();
+		final List<String> events = new ArrayList<String>();
+		consumer.addListener(event -> {
+			events.add(event.getSequenceNumber());
+			if ("o2".equals(event.getNewEntity().getOrder()))
+				throw new IllegalStateException("poison");
+			delivered.add(event.getNewEntity().getOrder());
+		});
+		final List<Record> parked = new ArrayList<Record>();
+		consumer.setFailureHandler((arn, shardId, record, failure) -> parked.add(record));
+		consumer.setMaxAttempts(3);
+
+		for (int i = 1; i <= 3; i++)
+			repository.saveItem(new OrderItem("c1", "o" + i));
+
+		assertEquals(1, consumer.poll());
+		assertEquals(0, consumer.poll());
+		assertEquals(0, parked.size());
+		assertEquals(1, consumer.poll());
+
+		assertEquals(2, delivered.size());
+		assertEquals("o1", delivered.get(0));
+		assertEquals("o3", delivered.get(1));
+		assertEquals(1, parked.size());
+		assertEquals(1, consumer.getSkippedCount());
+		assertEquals(3, consumer.getFailureCount());
+
+		// o2 was attempted three times and o3 is checkpointed, so nothing comes again
+		String poison = parked.get(0).dynamodb().sequenceNumber();
+		assertEquals(poison, events.get(1));
+		assertEquals(poison, events.get(3));
+		assertEquals(events.get(events.size() - 1), checkpoints.getCheckpoint(streamArn, singleShardId()));
+		assertEquals(0, consumer.poll());
+	}
+
+	@Test
+	public void throwingFailureHandlerKeepsTheRecord() throws Exception {
+		enableStream(1);
+		DDBStreamConsumer<OrderItem> consumer = consumer(1);
+		final List<String> delivered = new ArrayList<String>();
+		final boolean[] parkingFails = { true };
+		consumer.addListener(event -> {
+			if ("o1".equals(event.getNewEntity().getOrder()))
+				throw new IllegalStateException("poison");
+			delivered.add(event.getNewEntity().getOrder());
+		});
+		consumer.setFailureHandler((arn, shardId, record, failure) -> {
+			if (parkingFails[0])
+				throw new IllegalStateException("dead-letter queue unavailable");
+		});
+		consumer.setMaxAttempts(1);
+
+		repository.saveItem(new OrderItem("c1", "o1"));
+		repository.saveItem(new OrderItem("c1", "o2"));
+
+		assertEquals(0, consumer.poll());
+		assertNull(checkpoints.getCheckpoint(streamArn, singleShardId()));
+
+		parkingFails[0] = false;
+		assertEquals(1, consumer.poll());
+		assertEquals("o2", delivered.get(0));
+		assertEquals(1, consumer.getSkippedCount());
+	}
+
+	private void enableStream(int shardCount) {
+		streamArn = repository.getSimulator().enableStream("orders", StreamViewType.NEW_AND_OLD_IMAGES, shardCount);
+	}
+
+	private DDBStreamConsumer<OrderItem> consumer(int parallelism) {
+		DDBStreamConsumer<OrderItem> consumer = new DDBStreamConsumer<OrderItem>(
+				new InMemoryDynamoDbStreamsClient(repository.getSimulator()), streamArn, OrderItem.class, checkpoints,
+				parallelism);
+		consumers.add(consumer);
+		return consumer;
+	}
+
+	private static List<String> collectOrders(DDBStreamConsumer<OrderItem> consumer) {
+		final List<String> orders = Collections.synchronizedList(new ArrayList<String>());
+		consumer.addListener(event -> orders.add(event.getNewEntity().getOrder()));
+		return orders;
+	}
+
+	private static void awaitSize(List<String> list, int size) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (list.size() < size && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(size, list.size());
+	}
+
+	private String singleShardId() {
+		return new InMemoryDynamoDbStreamsClient(repository.getSimulator())
+				.describeStream(DescribeStreamRequest.builder().streamArn(streamArn).build()).streamDescription()
+				.shards().get(0).shardId();
+	}
+}